@@ -0,0 +1,144 @@
+package com.difference.benchmark;
+
+import com.difference.AccessMode;
+import com.difference.ChangeType;
+import com.difference.DiffConfig;
+import com.difference.DiffTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of DiffTool.diff on flat, deeply nested and wide objects and on keyed lists.
+ * Throughput and sampled latency (with its percentiles) are both reported. Run with '-prof gc' for the allocation rate:
+ * java -jar benchmarks/target/benchmarks.jar -prof gc
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+
+    private static final long SEED = 42;
+
+    @State(Scope.Benchmark)
+    public static class Tools {
+        @Param({"REFLECTION", "METHOD_HANDLE"})
+        AccessMode accessMode;
+
+        DiffTool<Object> diffTool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            DiffConfig config = new DiffConfig();
+            config.setAccessMode(accessMode);
+            diffTool = new DiffTool<>(config);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FlatGraph {
+        Model.Flat previous;
+        Model.Flat current;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            GraphGenerator generator = new GraphGenerator(SEED);
+            previous = generator.flat(1);
+            current = generator.change(previous);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeepGraph {
+        @Param({"4", "16", "64"})
+        int depth;
+
+        Model.Node previous;
+        Model.Node current;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            GraphGenerator generator = new GraphGenerator(SEED);
+            previous = generator.chain(depth);
+            current = generator.changeDeepest(previous);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WideGraph {
+        Model.Wide previous;
+        Model.Wide current;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            GraphGenerator generator = new GraphGenerator(SEED);
+            previous = generator.wide(1);
+            current = generator.change(previous);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class KeyedList {
+        @Param({"10", "1000", "100000", "1000000"})
+        int size;
+
+        @Param({"0.0", "0.01", "0.5"})
+        double changeRatio;
+
+        Model.Order previous;
+        Model.Order current;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            GraphGenerator generator = new GraphGenerator(SEED);
+            previous = generator.order(1, size);
+            current = generator.change(previous, changeRatio);
+        }
+    }
+
+    @Benchmark
+    public List<ChangeType> flat(Tools tools, FlatGraph graph) throws IllegalAccessException {
+        return tools.diffTool.diff(graph.previous, graph.current);
+    }
+
+    @Benchmark
+    public List<ChangeType> deep(Tools tools, DeepGraph graph) throws IllegalAccessException {
+        return tools.diffTool.diff(graph.previous, graph.current);
+    }
+
+    @Benchmark
+    public List<ChangeType> wide(Tools tools, WideGraph graph) throws IllegalAccessException {
+        return tools.diffTool.diff(graph.previous, graph.current);
+    }
+
+    @Benchmark
+    public List<ChangeType> keyedList(Tools tools, KeyedList graph) throws IllegalAccessException {
+        return tools.diffTool.diff(graph.previous, graph.current);
+    }
+
+    /**
+     * Renders the property of every change, which is where the lazily built paths are paid for
+     */
+    @Benchmark
+    public int deepWithPaths(Tools tools, DeepGraph graph) throws IllegalAccessException {
+        int length = 0;
+        for (ChangeType change : tools.diffTool.diff(graph.previous, graph.current)) {
+            length += change.getProperty().length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,120 @@
+package com.difference.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible generator of the previous and current versions of the benchmark object graphs.
+ * The same seed always gives the same graphs, and a change ratio gives the share of items modified,
+ * removed or added in the current version
+ */
+public final class GraphGenerator {
+
+    private final SplittableRandom random;
+
+    public GraphGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    public Model.Flat flat(int id) {
+        return new Model.Flat(id, word(12), random.nextInt(1000), random.nextLong(), random.nextDouble(), random.nextBoolean(), word(6));
+    }
+
+    /**
+     * Same object with one field changed
+     */
+    public Model.Flat change(Model.Flat flat) {
+        return new Model.Flat(flat.id(), flat.name(), flat.count() + 1, flat.amount(), flat.price(), flat.active(), flat.code());
+    }
+
+    /**
+     * Chain of the given depth
+     */
+    public Model.Node chain(int depth) {
+        Model.Node node = null;
+        for (int i = depth; i > 0; i--) {
+            node = new Model.Node(i, word(8), node);
+        }
+        return node;
+    }
+
+    /**
+     * Copy of a chain, sharing no link with it, whose deepest link has another name
+     */
+    public Model.Node changeDeepest(Model.Node node) {
+        if (node.child() == null) {
+            return new Model.Node(node.id(), node.name() + "'", null);
+        }
+        return new Model.Node(node.id(), node.name(), changeDeepest(node.child()));
+    }
+
+    public Model.Wide wide(int id) {
+        return new Model.Wide(id,
+                word(8), word(8), word(8), word(8), word(8), word(8), word(8), word(8),
+                word(8), word(8), word(8), word(8), word(8), word(8), word(8), word(8),
+                random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong(),
+                random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong(),
+                random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble(),
+                random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble());
+    }
+
+    /**
+     * Copy of a wide object with its last string and last double changed
+     */
+    public Model.Wide change(Model.Wide w) {
+        return new Model.Wide(w.id(),
+                w.f01(), w.f02(), w.f03(), w.f04(), w.f05(), w.f06(), w.f07(), w.f08(),
+                w.f09(), w.f10(), w.f11(), w.f12(), w.f13(), w.f14(), w.f15(), w.f16() + "'",
+                w.l01(), w.l02(), w.l03(), w.l04(), w.l05(), w.l06(), w.l07(), w.l08(),
+                w.d01(), w.d02(), w.d03(), w.d04(), w.d05(), w.d06(), w.d07(), w.d08() + 1);
+    }
+
+    public Model.Order order(int id, int size) {
+        List<Model.Line> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            lines.add(line(i));
+        }
+        return new Model.Order(id, word(10), lines);
+    }
+
+    /**
+     * Copy of an order where the given share of the lines is changed: half of them modified,
+     * a quarter removed and a quarter replaced by new lines. The list is shuffled so the join cannot rely on positions
+     */
+    public Model.Order change(Model.Order order, double changeRatio) {
+        List<Model.Line> lines = new ArrayList<>(order.lines().size());
+        int nextId = order.lines().size();
+        for (Model.Line line : order.lines()) {
+            if (random.nextDouble() >= changeRatio) {
+                lines.add(line);
+                continue;
+            }
+            int kind = random.nextInt(4);
+            if (kind < 2) {
+                lines.add(new Model.Line(line.id(), line.sku(), line.quantity() + 1, line.price()));
+            } else if (kind == 3) {
+                lines.add(line(nextId++));
+            }
+        }
+        for (int i = lines.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Model.Line swap = lines.get(i);
+            lines.set(i, lines.get(j));
+            lines.set(j, swap);
+        }
+        return new Model.Order(order.orderId(), order.customer(), lines);
+    }
+
+    private Model.Line line(int id) {
+        return new Model.Line(id, word(8), random.nextInt(100), random.nextDouble());
+    }
+
+    private String word(int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
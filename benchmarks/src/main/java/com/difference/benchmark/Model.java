@@ -0,0 +1,43 @@
+package com.difference.benchmark;
+
+import java.util.List;
+
+/**
+ * Shapes of object graphs compared by the benchmarks
+ */
+public final class Model {
+
+    private Model() {
+    }
+
+    /**
+     * Flat object mixing primitive, boxed and string fields
+     */
+    public record Flat(Integer id, String name, int count, long amount, double price, boolean active, String code) {
+    }
+
+    /**
+     * Link of a chain of nested objects, the last link has no child
+     */
+    public record Node(Integer id, String name, Node child) {
+    }
+
+    /**
+     * Object with many fields, most of them unchanged between versions
+     */
+    public record Wide(Integer id,
+                       String f01, String f02, String f03, String f04, String f05, String f06, String f07, String f08,
+                       String f09, String f10, String f11, String f12, String f13, String f14, String f15, String f16,
+                       long l01, long l02, long l03, long l04, long l05, long l06, long l07, long l08,
+                       double d01, double d02, double d03, double d04, double d05, double d06, double d07, double d08) {
+    }
+
+    /**
+     * Object holding a list whose items are joined on their 'id'
+     */
+    public record Order(Integer orderId, String customer, List<Line> lines) {
+    }
+
+    public record Line(Integer id, String sku, int quantity, double price) {
+    }
+}
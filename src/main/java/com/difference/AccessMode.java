@@ -0,0 +1,16 @@
+package com.difference;
+
+/**
+ * Strategy used to read the fields of audited objects. Records are read through the method handles
+ * of their component accessors in both modes
+ */
+public enum AccessMode {
+    /**
+     * Reads fields with java.lang.reflect.Field, boxing primitive values
+     */
+    REFLECTION,
+    /**
+     * Reads fields with method handles specialized per field type. Primitive fields are compared without boxing
+     */
+    METHOD_HANDLE
+}
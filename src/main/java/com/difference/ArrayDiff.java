@@ -0,0 +1,89 @@
+package com.difference;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Finds the range of differing indexes of two arrays of the same type with Arrays.mismatch, which the JIT
+ * vectorizes for primitive arrays. The common suffix is searched backwards in blocks, so primitive values are never boxed.
+ */
+final class ArrayDiff {
+
+    private static final int BLOCK = 256;
+
+    @FunctionalInterface
+    private interface RangeMismatch {
+        int mismatch(Object a, int aFrom, int aTo, Object b, int bFrom, int bTo);
+    }
+
+    private static final ClassValue<RangeMismatch> MISMATCH = new ClassValue<>() {
+        @Override
+        protected RangeMismatch computeValue(Class<?> type) {
+            Class<?> component = type.getComponentType();
+            if (component == int.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((int[]) a, af, at, (int[]) b, bf, bt);
+            } else if (component == long.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((long[]) a, af, at, (long[]) b, bf, bt);
+            } else if (component == double.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((double[]) a, af, at, (double[]) b, bf, bt);
+            } else if (component == byte.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((byte[]) a, af, at, (byte[]) b, bf, bt);
+            } else if (component == float.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((float[]) a, af, at, (float[]) b, bf, bt);
+            } else if (component == short.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((short[]) a, af, at, (short[]) b, bf, bt);
+            } else if (component == char.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((char[]) a, af, at, (char[]) b, bf, bt);
+            } else if (component == boolean.class) {
+                return (a, af, at, b, bf, bt) -> Arrays.mismatch((boolean[]) a, af, at, (boolean[]) b, bf, bt);
+            }
+            return (a, af, at, b, bf, bt) -> Arrays.mismatch((Object[]) a, af, at, (Object[]) b, bf, bt);
+        }
+    };
+
+    private ArrayDiff() {
+    }
+
+    /**
+     * Copy of a range of an array, of the same type
+     */
+    static Object slice(Object array, int from, int to) {
+        Object slice = Array.newInstance(array.getClass().getComponentType(), to - from);
+        System.arraycopy(array, from, slice, 0, to - from);
+        return slice;
+    }
+
+    /**
+     * Returns {first differing index, end of the differing range in previous, end of the differing range in current},
+     * or null when both arrays are equal. Both arrays must have the same class
+     */
+    static int[] changedRange(Object previous, Object current) {
+        RangeMismatch m = MISMATCH.get(previous.getClass());
+        int previousLength = Array.getLength(previous);
+        int currentLength = Array.getLength(current);
+        int from = m.mismatch(previous, 0, previousLength, current, 0, currentLength);
+        if (from < 0) {
+            return null;
+        }
+
+        int suffix = 0;
+        int max = Math.min(previousLength, currentLength) - from;
+        while (suffix < max) {
+            int block = Math.min(BLOCK, max - suffix);
+            int previousStart = previousLength - suffix - block;
+            int currentStart = currentLength - suffix - block;
+            if (m.mismatch(previous, previousStart, previousStart + block, current, currentStart, currentStart + block) < 0) {
+                suffix += block;
+                continue;
+            }
+            // The block holds the last difference, find it from the end of the block
+            int last = block - 1;
+            while (m.mismatch(previous, previousStart + last, previousStart + last + 1, current, currentStart + last, currentStart + last + 1) < 0) {
+                last--;
+            }
+            suffix += block - 1 - last;
+            break;
+        }
+        return new int[]{from, previousLength - suffix, currentLength - suffix};
+    }
+}
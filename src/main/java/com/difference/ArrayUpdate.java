@@ -0,0 +1,62 @@
+package com.difference;
+
+/**
+ * Change of an array property, reported with the range of indexes that differ.
+ * With compact changes the arrays only hold the differing ranges, starting at fromIndex
+ */
+public final class ArrayUpdate extends ChangeType {
+    Object previous;
+    Object current;
+    int fromIndex;
+    int previousToIndex;
+    int currentToIndex;
+
+    public Object getPrevious() {
+        return previous;
+    }
+
+    public void setPrevious(Object previous) {
+        this.previous = previous;
+    }
+
+    public Object getCurrent() {
+        return current;
+    }
+
+    public void setCurrent(Object current) {
+        this.current = current;
+    }
+
+    /**
+     * First index that differs
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    public void setFromIndex(int fromIndex) {
+        this.fromIndex = fromIndex;
+    }
+
+    /**
+     * End (exclusive) of the differing range in the previous array, the items after it are the same in both arrays
+     */
+    public int getPreviousToIndex() {
+        return previousToIndex;
+    }
+
+    public void setPreviousToIndex(int previousToIndex) {
+        this.previousToIndex = previousToIndex;
+    }
+
+    /**
+     * End (exclusive) of the differing range in the current array
+     */
+    public int getCurrentToIndex() {
+        return currentToIndex;
+    }
+
+    public void setCurrentToIndex(int currentToIndex) {
+        this.currentToIndex = currentToIndex;
+    }
+}
@@ -0,0 +1,166 @@
+package com.difference;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@link Differ} for each type annotated with @Audited or declaring an @AuditKey field.
+ * The generated differ reads the fields directly, compares primitive fields inline and hands the other
+ * fields to the DiffTool, so its output is the same as the reflective iteration.
+ * Fields annotated with @AuditIgnore are left out of the differ.
+ * Types whose fields cannot be read from their package are skipped and keep using reflection.
+ */
+@SupportedAnnotationTypes({"com.difference.Audited", "com.difference.AuditKey"})
+public class AuditDifferProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element type = element.getKind().isClass() ? element : element.getEnclosingElement();
+                if (type != null && type.getKind().isClass()) {
+                    types.add((TypeElement) type);
+                }
+            }
+        }
+
+        for (TypeElement type : types) {
+            String reason = unsupportedReason(type);
+            if (reason != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "No differ generated for " + type.getQualifiedName() + ": " + reason, type);
+                continue;
+            }
+            try {
+                generate(type);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to generate the differ of " + type.getQualifiedName() + ": " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns why no differ can be generated for the type, or null when it is supported
+     */
+    private String unsupportedReason(TypeElement type) {
+        if (type.getKind() == ElementKind.ENUM) {
+            return "enums are not supported";
+        }
+        for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (t.getModifiers().contains(Modifier.PRIVATE)) {
+                return "the type is not accessible from its package";
+            }
+            if (t.getNestingKind() == NestingKind.LOCAL || t.getNestingKind() == NestingKind.ANONYMOUS) {
+                return "local types are not supported";
+            }
+            if (t.getNestingKind() == NestingKind.MEMBER && !t.getModifiers().contains(Modifier.STATIC)
+                    && t.getKind() == ElementKind.CLASS) {
+                return "inner classes hold a reference to their enclosing instance";
+            }
+        }
+        boolean record = type.getKind() == ElementKind.RECORD;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            boolean isStatic = field.getModifiers().contains(Modifier.STATIC);
+            // Static primitive fields hold the same value for both objects and never produce a change
+            if ((isStatic && field.asType().getKind().isPrimitive()) || field.getAnnotation(AuditIgnore.class) != null) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE) && (isStatic || !record)) {
+                return "field " + field.getSimpleName() + " is private";
+            }
+        }
+        return null;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        String differName = simpleBinaryName.replace('$', '_') + Differs.SUFFIX;
+        String typeName = type.getQualifiedName().toString()
+                + (type.getTypeParameters().isEmpty() ? "" : "<" + "?, ".repeat(type.getTypeParameters().size() - 1) + "?>");
+        boolean record = type.getKind() == ElementKind.RECORD;
+
+        List<String> body = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            boolean isStatic = field.getModifiers().contains(Modifier.STATIC);
+            TypeKind kind = field.asType().getKind();
+            if ((isStatic && kind.isPrimitive()) || field.getAnnotation(AuditIgnore.class) != null) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            String previous;
+            String current;
+            if (isStatic) {
+                previous = current = type.getQualifiedName() + "." + name;
+            } else if (record) {
+                previous = "previous." + name + "()";
+                current = "current." + name + "()";
+            } else {
+                previous = "previous." + name;
+                current = "current." + name;
+            }
+
+            if (kind.isPrimitive()) {
+                String changed = switch (kind) {
+                    case FLOAT -> "Float.floatToIntBits(" + previous + ") != Float.floatToIntBits(" + current + ")";
+                    case DOUBLE -> "Double.doubleToLongBits(" + previous + ") != Double.doubleToLongBits(" + current + ")";
+                    default -> previous + " != " + current;
+                };
+                body.add("        if (" + changed + ") {");
+                body.add("            context.changed(previous, current, parent, \"" + name + "\");");
+                body.add("        }");
+            } else {
+                body.add("        context.compare(previous, current, " + previous + ", " + current + ", parent, \"" + name + "\");");
+            }
+        }
+
+        String qualifiedDifferName = packageName.isEmpty() ? differName : packageName + "." + differName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedDifferName, type);
+        try (Writer writer = file.openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("@javax.annotation.processing.Generated(\"" + AuditDifferProcessor.class.getName() + "\")\n");
+            writer.write("public final class " + differName + " implements com.difference.Differ<" + typeName + "> {\n\n");
+            writer.write("    @Override\n");
+            writer.write("    public void diff(" + typeName + " previous, " + typeName + " current,\n");
+            writer.write("                     com.difference.PropertyPath parent,\n");
+            writer.write("                     com.difference.DiffContext context) throws IllegalAccessException {\n");
+            for (String line : body) {
+                writer.write(line + "\n");
+            }
+            writer.write("    }\n");
+            writer.write("}\n");
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.difference;
+
+import java.util.List;
+
+/**
+ * Changes of one pair diffed by an {@link AuditPipeline}, with the key of its entity
+ */
+public record AuditEntry(Object entityKey, List<ChangeType> changes) {
+}
@@ -4,4 +4,8 @@ public class AuditException extends RuntimeException {
     public AuditException(String message) {
         super(message);
     }
-}
\ No newline at end of file
+
+    public AuditException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
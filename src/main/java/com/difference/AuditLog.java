@@ -0,0 +1,329 @@
+package com.difference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of the changes found by a diff, written to memory-mapped segment files of a directory.
+ * Each change is one record holding its sequence, timestamp, entity key ('id' or @AuditKey value), property and values,
+ * encoded with {@link SnapshotCodec}. A full segment is sealed with an index sorted by property and by entity key,
+ * then the log rolls to a new segment, so a query reads only the matching records of each segment.
+ * Values are read back as they are decoded by the codec: nested objects are maps of their fields.
+ * The methods are synchronized, so a log can be shared between threads
+ */
+public class AuditLog implements Closeable {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String TYPES = "types";
+    private static final byte PROPERTY = 0;
+    private static final byte LIST = 1;
+    private static final byte MAP = 2;
+    private static final byte ARRAY = 3;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final List<AuditSegment> segments = new ArrayList<>();
+    private final Map<Class<?>, Integer> typeIds = new HashMap<>();
+    private final List<Class<?>> types = new ArrayList<>();
+    private final SnapshotCodec codec;
+    private AuditSegment active;
+
+    public AuditLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the log of the given directory, creating it when needed. The last segment of an existing log
+     * keeps taking records, its index is rebuilt by reading it
+     */
+    public AuditLog(Path directory, int segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.codec = new SnapshotCodec(new TypeTable());
+
+        Path typesFile = directory.resolve(TYPES);
+        if (Files.exists(typesFile)) {
+            for (String name : Files.readAllLines(typesFile, StandardCharsets.UTF_8)) {
+                typeIds.put(SnapshotCodec.typeNamed(name), types.size());
+                types.add(SnapshotCodec.typeNamed(name));
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(AuditSegment::isSegment).sorted().toList()) {
+                segments.add(AuditSegment.open(file, segmentSize));
+            }
+        }
+        if (segments.isEmpty() || segments.get(segments.size() - 1).isSealed()) {
+            long next = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).getNextSequence();
+            segments.add(AuditSegment.create(directory, next, segmentSize));
+        }
+        active = segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Appends the changes of an entity as one batch and returns the sequence of the first one
+     */
+    public synchronized long append(Object entityKey, Collection<? extends ChangeType> changes) throws IOException {
+        long first = active.getNextSequence();
+        long timestamp = System.currentTimeMillis();
+        for (ChangeType change : changes) {
+            ByteBuffer body = encode(entityKey, change);
+            long pathHash = pathHash(body, 0);
+            long keyHash = keyHash(body, 0);
+            if (!active.append(timestamp, body, pathHash, keyHash)) {
+                if (AuditSegment.RECORD_HEADER + body.remaining() > segmentSize) {
+                    throw new AuditException("A change of " + body.remaining() + " bytes does not fit in segments of " + segmentSize + " bytes");
+                }
+                roll();
+                active.append(timestamp, body, pathHash, keyHash);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Listener appending each change of an entity as soon as the diff finds it
+     */
+    public ChangeListener listener(Object entityKey) {
+        return change -> {
+            try {
+                append(entityKey, List.of(change));
+            } catch (IOException e) {
+                throw new AuditException("Unable to append to the audit log: " + e.getMessage(), e);
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Returns the changes of a property of an entity, in the order they were appended
+     */
+    public List<AuditRecord> find(String property, Object entityKey) {
+        return find(property, entityKey, true);
+    }
+
+    /**
+     * Returns the changes of a property, e.g. 'Book.category.categoryName', for every entity
+     */
+    public List<AuditRecord> findByProperty(String property) {
+        return find(property, null, false);
+    }
+
+    /**
+     * Returns every change of an entity
+     */
+    public List<AuditRecord> findByEntity(Object entityKey) {
+        return find(null, entityKey, true);
+    }
+
+    private synchronized List<AuditRecord> find(String property, Object entityKey, boolean byKey) {
+        Long pathHash = null;
+        if (property != null) {
+            byte[] bytes = property.getBytes(StandardCharsets.UTF_8);
+            pathHash = hash(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+        Long keyHash = null;
+        ByteBuffer key = null;
+        if (byKey) {
+            // A query adds no type to the table: no record holds a key of a type it does not have yet
+            try {
+                codec.reset();
+                if (!codec.writeLookup(entityKey)) {
+                    return new ArrayList<>();
+                }
+            } catch (IllegalAccessException e) {
+                throw new AuditException("Unable to encode the key " + entityKey + ": " + e.getMessage(), e);
+            }
+            key = codec.written();
+            keyHash = keyHash(key, 0);
+        }
+
+        List<AuditRecord> records = new ArrayList<>();
+        for (AuditSegment segment : segments) {
+            ByteBuffer buffer = segment.getBuffer();
+            for (int offset : segment.find(pathHash, keyHash)) {
+                // Hashes may collide, the record itself is checked. Keys are compared encoded, as a key is not always
+                // read back as an object equal to the one it was written from (a UUID is read as its string)
+                int body = offset + AuditSegment.RECORD_HEADER;
+                if (byKey && !key.equals(buffer.slice(body, SnapshotCodec.skip(buffer, body) - body))) {
+                    continue;
+                }
+                AuditRecord record = read(buffer, offset);
+                if (property == null || property.equals(record.change().getProperty())) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Forces the records appended so far to the disk
+     */
+    public synchronized void flush() {
+        active.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (AuditSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private void roll() throws IOException {
+        active.seal();
+        active = AuditSegment.create(directory, active.getNextSequence(), segmentSize);
+        segments.add(active);
+    }
+
+    /**
+     * Body of a record: entity key, property, kind of change, then the values of the change
+     */
+    private ByteBuffer encode(Object entityKey, ChangeType change) {
+        try {
+            codec.reset();
+            codec.write(entityKey);
+            codec.write(change.getProperty());
+            if (change instanceof PropertyUpdate<?> propertyUpdate) {
+                codec.write(PROPERTY);
+                codec.write(propertyUpdate.getPrevious());
+                codec.write(propertyUpdate.getCurrent());
+            } else if (change instanceof ListUpdate<?> listUpdate) {
+                codec.write(LIST);
+                codec.write(listUpdate.getAdded());
+                codec.write(listUpdate.getRemoved());
+            } else if (change instanceof MapUpdate<?, ?> mapUpdate) {
+                codec.write(MAP);
+                codec.write(mapUpdate.getAdded());
+                codec.write(mapUpdate.getRemoved());
+            } else {
+                ArrayUpdate arrayUpdate = (ArrayUpdate) change;
+                codec.write(ARRAY);
+                codec.write(arrayUpdate.getFromIndex());
+                codec.write(arrayUpdate.getPreviousToIndex());
+                codec.write(arrayUpdate.getCurrentToIndex());
+                codec.write(arrayUpdate.getPrevious());
+                codec.write(arrayUpdate.getCurrent());
+            }
+        } catch (IllegalAccessException e) {
+            throw new AuditException("Unable to encode the change of " + change.getProperty() + ": " + e.getMessage(), e);
+        }
+        return codec.written();
+    }
+
+    private AuditRecord read(ByteBuffer buffer, int offset) {
+        int position = offset + AuditSegment.RECORD_HEADER;
+        Object entityKey = codec.read(buffer, position);
+        position = SnapshotCodec.skip(buffer, position);
+        String property = (String) codec.read(buffer, position);
+        position = SnapshotCodec.skip(buffer, position);
+        byte kind = (Byte) codec.read(buffer, position);
+        position = SnapshotCodec.skip(buffer, position);
+        Object[] values = new Object[kind == ARRAY ? 5 : 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = codec.read(buffer, position);
+            position = SnapshotCodec.skip(buffer, position);
+        }
+
+        ChangeType change;
+        if (kind == PROPERTY) {
+            PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+            propertyUpdate.setPrevious(values[0]);
+            propertyUpdate.setCurrent(values[1]);
+            change = propertyUpdate;
+        } else if (kind == LIST) {
+            ListUpdate<Object> listUpdate = new ListUpdate<>();
+            listUpdate.setAdded((List<Object>) values[0]);
+            listUpdate.setRemoved((List<Object>) values[1]);
+            change = listUpdate;
+        } else if (kind == MAP) {
+            MapUpdate<Object, Object> mapUpdate = new MapUpdate<>();
+            mapUpdate.setAdded((Map<Object, Object>) values[0]);
+            mapUpdate.setRemoved((Map<Object, Object>) values[1]);
+            change = mapUpdate;
+        } else {
+            ArrayUpdate arrayUpdate = new ArrayUpdate();
+            arrayUpdate.setFromIndex((Integer) values[0]);
+            arrayUpdate.setPreviousToIndex((Integer) values[1]);
+            arrayUpdate.setCurrentToIndex((Integer) values[2]);
+            arrayUpdate.setPrevious(values[3]);
+            arrayUpdate.setCurrent(values[4]);
+            change = arrayUpdate;
+        }
+        change.setProperty(property);
+        return new AuditRecord(buffer.getLong(offset + 4), buffer.getLong(offset + 12), entityKey, change);
+    }
+
+    /**
+     * Hash of the encoded entity key at the start of a body
+     */
+    static long keyHash(ByteBuffer buffer, int body) {
+        return hash(buffer, body, SnapshotCodec.skip(buffer, body));
+    }
+
+    /**
+     * Hash of the UTF-8 bytes of the property following the entity key of a body
+     */
+    static long pathHash(ByteBuffer buffer, int body) {
+        int property = SnapshotCodec.skip(buffer, body);
+        return hash(buffer, property + 5, SnapshotCodec.skip(buffer, property));
+    }
+
+    /**
+     * 64 bits FNV-1a hash of a range of bytes
+     */
+    private static long hash(ByteBuffer buffer, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= buffer.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Type ids are given in order of first use and appended to the 'types' file of the directory
+     */
+    private final class TypeTable implements SnapshotCodec.Types {
+
+        @Override
+        public int idOf(Class<?> type) {
+            Integer id = typeIds.get(type);
+            if (id != null) {
+                return id;
+            }
+            try {
+                Files.writeString(directory.resolve(TYPES), type.getName() + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new AuditException("Unable to write the type table of the audit log: " + e.getMessage(), e);
+            }
+            typeIds.put(type, types.size());
+            types.add(type);
+            return types.size() - 1;
+        }
+
+        @Override
+        public int find(Class<?> type) {
+            return typeIds.getOrDefault(type, -1);
+        }
+
+        @Override
+        public Class<?> typeOf(int id) {
+            return types.get(id);
+        }
+    }
+}
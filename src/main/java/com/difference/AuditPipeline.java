@@ -0,0 +1,246 @@
+package com.difference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous audit stage: callers submit pairs to a bounded lock-free queue, so a write only pays one enqueue,
+ * and worker threads diff them and write their changes to an {@link AuditSink} in batches. A worker fills its batch
+ * while pairs are queued and writes it when it is full or when the queue is empty, so batches grow with the load.
+ * When the queue is full the configured {@link Backpressure} applies. Closing the pipeline diffs the pairs still queued.
+ * The workers already keep the CPUs busy, so the DiffTool should compare on the calling thread (parallel threshold 0)
+ */
+public final class AuditPipeline<T> implements AutoCloseable {
+
+    private static final long PARK_NANOS = 100_000;
+    private static final AtomicInteger PIPELINES = new AtomicInteger();
+
+    private final DiffTool<T> diffTool;
+    private final AuditSink sink;
+    private final RingBuffer<Task<T>> queue;
+    private final int batchSize;
+    private final Backpressure backpressure;
+    private final Consumer<Exception> failureHandler;
+    private final Thread[] workers;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean closed;
+
+    public AuditPipeline(DiffTool<T> diffTool, AuditSink sink) {
+        this(diffTool, sink, new PipelineConfig());
+    }
+
+    public AuditPipeline(DiffTool<T> diffTool, AuditSink sink, PipelineConfig config) {
+        this.diffTool = diffTool;
+        this.sink = sink;
+        this.queue = new RingBuffer<>(config.getCapacity());
+        this.batchSize = Math.max(1, config.getBatchSize());
+        this.backpressure = config.getBackpressure();
+        this.failureHandler = config.getFailureHandler();
+        ThreadFactory threadFactory = config.getThreadFactory() != null ? config.getThreadFactory() : daemonThreads();
+        this.workers = new Thread[Math.max(1, config.getWorkers())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = threadFactory.newThread(this::work);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a pair to be diffed, its changes being written to the sink with the key of its entity.
+     * Returns false when the queue is full and the pair was dropped
+     */
+    public boolean submit(Object entityKey, T previous, T current) {
+        if (previous == null || current == null) {
+            throw new AuditException("Provided data is not valid. One of both object is null");
+        }
+        if (closed) {
+            throw new AuditException("The audit pipeline is closed");
+        }
+        Task<T> task = new Task<>(entityKey, previous, current);
+        if (queue.offer(task)) {
+            return queued();
+        }
+        switch (backpressure) {
+            case DROP -> {
+                dropped.increment();
+                return false;
+            }
+            case CALLER_RUNS -> {
+                AuditEntry entry = run(task);
+                if (entry != null) {
+                    write(List.of(entry));
+                }
+                return true;
+            }
+            default -> {
+                for (int idle = 0; !queue.offer(task); idle = pause(idle)) {
+                    if (closed) {
+                        throw new AuditException("The audit pipeline is closed");
+                    }
+                }
+                return queued();
+            }
+        }
+    }
+
+    /**
+     * A pair queued while the pipeline was being closed may come after its last drain, the caller then diffs it
+     */
+    private boolean queued() {
+        if (closed) {
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * Number of pairs dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Number of pairs whose diff failed, plus the number of entries of the batches the sink failed to write
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Number of pairs waiting in the queue
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking pairs, waits for the workers to diff the queued ones and write their changes
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // A pair submitted while the workers were stopping is diffed here
+        drain();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loop of a worker: diffs the queued pairs until the pipeline is closed and the queue is empty
+     */
+    private void work() {
+        for (int idle = 0; ; ) {
+            if (drain()) {
+                idle = 0;
+            } else if (closed) {
+                return;
+            } else {
+                idle = pause(idle);
+            }
+        }
+    }
+
+    /**
+     * Diffs the queued pairs into batches, writing each batch when it is full and the last one once the queue is empty.
+     * Returns false when the queue was empty
+     */
+    private boolean drain() {
+        Task<T> task = queue.poll();
+        if (task == null) {
+            return false;
+        }
+        List<AuditEntry> batch = new ArrayList<>(batchSize);
+        for (; task != null; task = queue.poll()) {
+            AuditEntry entry = run(task);
+            if (entry == null) {
+                continue;
+            }
+            batch.add(entry);
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        return true;
+    }
+
+    /**
+     * Diffs a pair. Returns null when it has no change or its diff failed
+     */
+    private AuditEntry run(Task<T> task) {
+        try {
+            List<ChangeType> changes = diffTool.diff(task.previous(), task.current());
+            return changes.isEmpty() ? null : new AuditEntry(task.entityKey(), changes);
+        } catch (IllegalAccessException | RuntimeException e) {
+            fail(e, 1);
+            return null;
+        }
+    }
+
+    private void write(List<AuditEntry> batch) {
+        try {
+            sink.write(batch);
+        } catch (IOException | RuntimeException e) {
+            fail(e, batch.size());
+        }
+    }
+
+    private void fail(Exception e, int count) {
+        failed.add(count);
+        if (failureHandler != null) {
+            failureHandler.accept(e);
+        }
+    }
+
+    /**
+     * Waits a little longer after each idle round: spins first, then yields, then parks
+     */
+    private static int pause(int idle) {
+        if (idle < 64) {
+            Thread.onSpinWait();
+        } else if (idle < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        int pipeline = PIPELINES.incrementAndGet();
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "audit-pipeline-" + pipeline + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Pair queued for a worker
+     */
+    private record Task<T>(Object entityKey, T previous, T current) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.difference;
+
+/**
+ * Change read back from an {@link AuditLog}, with the sequence and time it was appended at and the key of its entity
+ */
+public record AuditRecord(long sequence, long timestamp, Object entityKey, ChangeType change) {
+}
@@ -0,0 +1,247 @@
+package com.difference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Memory-mapped file of an {@link AuditLog} holding consecutive records, each one made of its length, sequence,
+ * timestamp and encoded body. While the segment is active its index is kept in memory, in append order.
+ * When the segment is sealed the index is written next to it, sorted once by (path hash, key hash) and once by
+ * (key hash, path hash), so a sealed segment answers a query with a binary search
+ */
+final class AuditSegment {
+
+    static final String LOG = ".log";
+    static final String INDEX = ".idx";
+    static final int RECORD_HEADER = 20;
+    private static final int ENTRY = 20;
+    private static final int INDEX_HEADER = 8;
+
+    private final Path file;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int size;
+    private long nextSequence;
+
+    // Index of an active segment
+    private long[] pathHashes = new long[64];
+    private long[] keyHashes = new long[64];
+    private int[] offsets = new int[64];
+    private int count;
+
+    // Index of a sealed segment
+    private MappedByteBuffer index;
+
+    private AuditSegment(Path file, long firstSequence, int capacity) throws IOException {
+        this.file = file;
+        this.firstSequence = firstSequence;
+        this.nextSequence = firstSequence;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+    }
+
+    static AuditSegment create(Path directory, long firstSequence, int capacity) throws IOException {
+        return new AuditSegment(directory.resolve(String.format("%020d", firstSequence) + LOG), firstSequence, capacity);
+    }
+
+    /**
+     * Opens an existing segment. Without its index file, the records are scanned to rebuild the index in memory
+     */
+    static AuditSegment open(Path file, int capacity) throws IOException {
+        String name = file.getFileName().toString();
+        AuditSegment segment = new AuditSegment(file, Long.parseLong(name.substring(0, name.length() - LOG.length())), capacity);
+        Path indexFile = segment.indexFile();
+        if (Files.exists(indexFile)) {
+            try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                segment.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+            }
+            segment.count = segment.index.getInt(0);
+            segment.size = segment.index.getInt(4);
+            segment.nextSequence = segment.firstSequence + segment.count;
+            return segment;
+        }
+        for (int offset = 0; offset + RECORD_HEADER <= segment.buffer.capacity(); ) {
+            int length = segment.buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            int body = offset + RECORD_HEADER;
+            segment.addEntry(AuditLog.pathHash(segment.buffer, body), AuditLog.keyHash(segment.buffer, body), offset);
+            segment.nextSequence = segment.buffer.getLong(offset + 4) + 1;
+            offset = body + length;
+            segment.size = offset;
+        }
+        return segment;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    boolean isSealed() {
+        return index != null;
+    }
+
+    /**
+     * Writes a record at the end of the segment. Returns false when the segment has no room left for it
+     */
+    boolean append(long timestamp, ByteBuffer body, long pathHash, long keyHash) {
+        int length = body.remaining();
+        if (size + RECORD_HEADER + length > buffer.capacity()) {
+            return false;
+        }
+        int offset = size;
+        buffer.put(offset + RECORD_HEADER, body, body.position(), length);
+        buffer.putLong(offset + 4, nextSequence++);
+        buffer.putLong(offset + 12, timestamp);
+        // The length is written last, a reader never sees a record before its body
+        buffer.putInt(offset, length);
+        size = offset + RECORD_HEADER + length;
+        addEntry(pathHash, keyHash, offset);
+        return true;
+    }
+
+    private void addEntry(long pathHash, long keyHash, int offset) {
+        if (count == offsets.length) {
+            pathHashes = Arrays.copyOf(pathHashes, count * 2);
+            keyHashes = Arrays.copyOf(keyHashes, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        pathHashes[count] = pathHash;
+        keyHashes[count] = keyHash;
+        offsets[count] = offset;
+        count++;
+    }
+
+    /**
+     * Collects the offsets of the records matching the hashes, in append order. A null hash matches every record.
+     * The records still have to be checked, as different paths or keys may share a hash
+     */
+    int[] find(Long pathHash, Long keyHash) {
+        int[] found = new int[16];
+        int n = 0;
+        if (index == null) {
+            for (int i = 0; i < count; i++) {
+                if ((pathHash == null || pathHashes[i] == pathHash) && (keyHash == null || keyHashes[i] == keyHash)) {
+                    if (n == found.length) {
+                        found = Arrays.copyOf(found, n * 2);
+                    }
+                    found[n++] = offsets[i];
+                }
+            }
+            return Arrays.copyOf(found, n);
+        }
+        if (pathHash == null && keyHash == null) {
+            found = new int[count];
+            for (int i = 0, offset = 0; i < count; i++) {
+                found[i] = offset;
+                offset += RECORD_HEADER + buffer.getInt(offset);
+            }
+            return found;
+        }
+        // Entries sorted by path then key when the path is known, by key then path otherwise
+        boolean byPath = pathHash != null;
+        int base = INDEX_HEADER + (byPath ? 0 : count * ENTRY);
+        long first = byPath ? pathHash : keyHash;
+        Long second = byPath ? keyHash : null;
+        for (int i = lowerBound(base, first, second); i < count; i++) {
+            int entry = base + i * ENTRY;
+            if (index.getLong(entry) != first || (second != null && index.getLong(entry + 8) != second)) {
+                break;
+            }
+            if (n == found.length) {
+                found = Arrays.copyOf(found, n * 2);
+            }
+            found[n++] = index.getInt(entry + 16);
+        }
+        found = Arrays.copyOf(found, n);
+        Arrays.sort(found);
+        return found;
+    }
+
+    private int lowerBound(int base, long first, Long second) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int entry = base + middle * ENTRY;
+            int c = Long.compare(index.getLong(entry), first);
+            if (c == 0 && second != null) {
+                c = Long.compare(index.getLong(entry + 8), second);
+            }
+            if (c < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the sorted index file. The segment takes no more records
+     */
+    void seal() throws IOException {
+        Integer[] byPath = new Integer[count];
+        Arrays.setAll(byPath, i -> i);
+        Integer[] byKey = byPath.clone();
+        Arrays.sort(byPath, Comparator.<Integer>comparingLong(i -> pathHashes[i]).thenComparingLong(i -> keyHashes[i]));
+        Arrays.sort(byKey, Comparator.<Integer>comparingLong(i -> keyHashes[i]).thenComparingLong(i -> pathHashes[i]));
+
+        ByteBuffer out = ByteBuffer.allocate(INDEX_HEADER + count * ENTRY * 2);
+        out.putInt(count).putInt(size);
+        for (int i : byPath) {
+            out.putLong(pathHashes[i]).putLong(keyHashes[i]).putInt(offsets[i]);
+        }
+        for (int i : byKey) {
+            out.putLong(keyHashes[i]).putLong(pathHashes[i]).putInt(offsets[i]);
+        }
+        buffer.force();
+        Path temporary = Path.of(indexFile() + ".tmp");
+        Files.write(temporary, out.array());
+        Files.move(temporary, indexFile(), StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel indexChannel = FileChannel.open(indexFile(), StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        pathHashes = null;
+        keyHashes = null;
+        offsets = null;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        if (index == null) {
+            buffer.force();
+        }
+        channel.close();
+    }
+
+    private Path indexFile() {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - LOG.length()) + INDEX);
+    }
+
+    static boolean isSegment(Path file) {
+        return file.getFileName().toString().endsWith(LOG);
+    }
+}
@@ -0,0 +1,18 @@
+package com.difference;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the changes found by an {@link AuditPipeline}, e.g. an {@link AuditLog} appending each entry.
+ * It is called by the worker threads, and by the callers with {@link Backpressure#CALLER_RUNS}, so it has to be thread-safe
+ */
+@FunctionalInterface
+public interface AuditSink {
+
+    /**
+     * Writes a batch of entries, in the order their pairs were taken from the queue by one worker.
+     * Pairs without changes have no entry
+     */
+    void write(List<AuditEntry> batch) throws IOException;
+}
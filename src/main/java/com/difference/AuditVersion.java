@@ -0,0 +1,15 @@
+package com.difference;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the version of an entity, bumped on every write (a counter or an updated-at value). Two objects of the same class
+ * with the same non null version are considered unchanged: neither their other fields nor the objects they hold are compared.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface AuditVersion {
+}
@@ -0,0 +1,15 @@
+package com.difference;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Opts a type in for compile time generation of its {@link Differ}.
+ * Types declaring an @AuditKey field are opted in as well.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Audited {
+}
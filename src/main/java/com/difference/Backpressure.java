@@ -0,0 +1,13 @@
+package com.difference;
+
+/**
+ * What an {@link AuditPipeline} does with a pair submitted while its queue is full
+ */
+public enum Backpressure {
+    /** The caller waits until a worker frees a slot */
+    BLOCK,
+    /** The pair is dropped and counted, submit returns false */
+    DROP,
+    /** The caller diffs the pair and writes its changes to the sink itself */
+    CALLER_RUNS
+}
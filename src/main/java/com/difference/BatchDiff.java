@@ -0,0 +1,44 @@
+package com.difference;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task diffing a range of pairs. Ranges are split in halves until they hold at most
+ * batchSize pairs, and each result is stored at the index of its pair so the input order is kept
+ */
+final class BatchDiff<T> extends RecursiveAction {
+
+    private final DiffTool<T> diffTool;
+    private final DiffPair<T>[] pairs;
+    private final List<ChangeType>[] results;
+    private final int from;
+    private final int to;
+    private final int batchSize;
+
+    BatchDiff(DiffTool<T> diffTool, DiffPair<T>[] pairs, List<ChangeType>[] results, int from, int to, int batchSize) {
+        this.diffTool = diffTool;
+        this.pairs = pairs;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= batchSize) {
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = diffTool.diff(pairs[i].previous(), pairs[i].current());
+                } catch (IllegalAccessException e) {
+                    throw new AuditException("Unable to read the pair at index " + i + ": " + e.getMessage(), e);
+                }
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new BatchDiff<>(diffTool, pairs, results, from, middle, batchSize),
+                new BatchDiff<>(diffTool, pairs, results, middle, to, batchSize));
+    }
+}
@@ -0,0 +1,14 @@
+package com.difference;
+
+/**
+ * Receives the changes found by DiffTool as soon as they are found
+ */
+@FunctionalInterface
+public interface ChangeListener {
+
+    /**
+     * Called for every PropertyUpdate/ListUpdate in the same order diff returns them.
+     * Returning false stops the traversal, no further change is reported
+     */
+    boolean onChange(ChangeType change);
+}
@@ -1,13 +1,33 @@
 package com.difference;
 
-public sealed class ChangeType permits PropertyUpdate, ListUpdate {
+public sealed class ChangeType permits PropertyUpdate, ListUpdate, MapUpdate, ArrayUpdate {
     String property;
+    PropertyPath path;
 
+    /**
+     * The property as a string, rendered from its path the first time it is asked for
+     */
     public String getProperty() {
+        if (property == null && path != null) {
+            property = path.toString();
+        }
         return property;
     }
 
     public void setProperty(String property) {
         this.property = property;
+        this.path = null;
+    }
+
+    /**
+     * Path of the property, null when the property was set as a plain string
+     */
+    public PropertyPath getPath() {
+        return path;
+    }
+
+    void setPath(PropertyPath path) {
+        this.path = path;
+        this.property = null;
     }
 }
@@ -0,0 +1,204 @@
+package com.difference;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Configuration of a DiffTool
+ */
+public class DiffConfig {
+    AccessMode accessMode = AccessMode.REFLECTION;
+    boolean generatedDiffers = true;
+    boolean orderedLists;
+    int orderedListMaxCost = 4096;
+    int parallelism;
+    ForkJoinPool pool;
+    int batchSize = 32;
+    int parallelThreshold;
+    boolean fingerprints;
+    DiffMetrics metrics;
+    List<String> paths;
+    int maxDepth;
+    boolean compactChanges;
+    int spillThreshold;
+    Path spillDirectory;
+
+    public AccessMode getAccessMode() {
+        return accessMode;
+    }
+
+    public void setAccessMode(AccessMode accessMode) {
+        this.accessMode = accessMode;
+    }
+
+    /**
+     * Whether differs generated at compile time by AuditDifferProcessor are used when present
+     */
+    public boolean isGeneratedDiffers() {
+        return generatedDiffers;
+    }
+
+    public void setGeneratedDiffers(boolean generatedDiffers) {
+        this.generatedDiffers = generatedDiffers;
+    }
+
+    /**
+     * Whether lists whose items have no 'id' nor @AuditKey are compared by position instead of failing
+     */
+    public boolean isOrderedLists() {
+        return orderedLists;
+    }
+
+    public void setOrderedLists(boolean orderedLists) {
+        this.orderedLists = orderedLists;
+    }
+
+    /**
+     * Maximum number of edits searched when comparing a list by position. Beyond it the differing
+     * range is reported as deleted and inserted, which keeps the comparison time bounded
+     */
+    public int getOrderedListMaxCost() {
+        return orderedListMaxCost;
+    }
+
+    public void setOrderedListMaxCost(int orderedListMaxCost) {
+        this.orderedListMaxCost = orderedListMaxCost;
+    }
+
+    /**
+     * Number of threads used by diffAll. 0 uses the common fork-join pool. Above 0 the DiffTool creates and owns a pool
+     * of that many threads, which is shut down when the DiffTool is closed
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Fork-join pool owned by the caller used by diffAll and the parallel list comparisons instead of a pool of
+     * parallelism threads. It is never shut down by the DiffTool
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Maximum number of pairs diffed sequentially by one fork-join task in diffAll
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Size from which a keyed list is compared in parallel fork-join tasks, as well as its sibling large lists.
+     * 0, the default, keeps every diff on the calling thread. The tasks run in the pool of the DiffTool, the common pool
+     * unless a parallelism or a pool is set. Their changes are collected before being handed to the listener, so a
+     * listener returning false stops the delivery but not the tasks already running
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Whether nested objects and list items implementing Fingerprinted are considered unchanged, without comparing
+     * their fields, when both have the same fingerprint
+     */
+    public boolean isFingerprints() {
+        return fingerprints;
+    }
+
+    public void setFingerprints(boolean fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Receives the statistics of every diff. Null by default, statistics are then only gathered
+     * while a flight recording enables the 'com.difference.Diff' event
+     */
+    public DiffMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(DiffMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Include and exclude ('!' prefix) patterns of the compared properties, e.g. 'Book.category.*' or '!*.internalCache'.
+     * A pattern starts with the root type and '*' stands for one or more names. Excluded properties are never read.
+     * With include patterns, only the properties they match, lead to or are nested in are compared
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Depth of the deepest compared properties, 1 for the fields of the root object. 0 compares every depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Whether changes only hold the values of the changed properties instead of the objects owning them: propertyUpdates
+     * hold the old and new value of the property, list, set and map updates hold the keys of the nested items they add or
+     * remove, in unmodifiable lists, modified map entries hold their old and new values and arrayUpdates hold the differing ranges. Queued changes then keep no object graph
+     * alive. Patches cannot be built from compact changes
+     */
+    public boolean isCompactChanges() {
+        return compactChanges;
+    }
+
+    public void setCompactChanges(boolean compactChanges) {
+        this.compactChanges = compactChanges;
+    }
+
+    /**
+     * Size from which keyed lists are joined on disk: the keys of both lists are sorted in runs of this many items,
+     * written to temporary files and merged, and the changes are delivered in key order, the added and
+     * removed items in several listUpdates. The heap used by the join then stays bounded whatever the size of the lists.
+     * 0 joins every list in memory
+     */
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Directory of the temporary files of the lists joined on disk, the 'java.io.tmpdir' directory when null
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+}
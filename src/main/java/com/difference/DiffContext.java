@@ -0,0 +1,17 @@
+package com.difference;
+
+/**
+ * Callbacks used by a generated {@link Differ} to report its results to the DiffTool running it
+ */
+public interface DiffContext {
+
+    /**
+     * Registers a modified property of the given objects
+     */
+    void changed(Object previous, Object current, PropertyPath parent, String fieldName) throws IllegalAccessException;
+
+    /**
+     * Compares the values of a non primitive field the same way DiffTool does: null, list, java object or nested object
+     */
+    void compare(Object previous, Object current, Object value1, Object value2, PropertyPath parent, String fieldName) throws IllegalAccessException;
+}
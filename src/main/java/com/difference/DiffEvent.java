@@ -0,0 +1,45 @@
+package com.difference;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of one diff, disabled unless a recording enables 'com.difference.Diff'
+ */
+@Name("com.difference.Diff")
+@Label("Diff")
+@Category("Difference")
+@Description("Comparison of two objects by a DiffTool")
+@StackTrace(false)
+final class DiffEvent extends Event {
+
+    @Label("Root Type")
+    String rootType;
+
+    @Label("Fields Visited")
+    int fieldsVisited;
+
+    @Label("Max Depth")
+    int maxDepth;
+
+    @Label("Lists Compared")
+    int listsCompared;
+
+    @Label("List Items Compared")
+    long listItemsCompared;
+
+    @Label("Largest List")
+    int largestList;
+
+    @Label("List Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long listTime;
+
+    @Label("Changes")
+    int changes;
+}
@@ -0,0 +1,10 @@
+package com.difference;
+
+/**
+ * Receives the statistics of every diff of a DiffTool, see DiffConfig.setMetrics.
+ * It is called on the thread that ran the diff, once the diff is over
+ */
+public interface DiffMetrics {
+
+    void record(DiffStats stats);
+}
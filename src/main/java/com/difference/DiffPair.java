@@ -0,0 +1,7 @@
+package com.difference;
+
+/**
+ * Previous and current state of an object, as compared by DiffTool.diffAll
+ */
+public record DiffPair<T>(T previous, T current) {
+}
@@ -0,0 +1,111 @@
+package com.difference;
+
+/**
+ * Statistics of one diff, only gathered when metrics or the JFR events are enabled.
+ * The time of the lists compared inside fork-join tasks counts as traversal time
+ */
+public class DiffStats {
+    String rootType;
+    long durationNanos;
+    long listNanos;
+    int fieldsVisited;
+    int depth;
+    int maxDepth;
+    int listsCompared;
+    long listItemsCompared;
+    int largestList;
+    int changes;
+
+    /**
+     * Simple name of the type of the compared objects
+     */
+    public String getRootType() {
+        return rootType;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Time spent comparing lists, part of the duration
+     */
+    public long getListNanos() {
+        return listNanos;
+    }
+
+    /**
+     * Time spent walking the objects outside of the lists
+     */
+    public long getTraversalNanos() {
+        return durationNanos - listNanos;
+    }
+
+    /**
+     * Fields of every object walked and of every matched list item compared
+     */
+    public int getFieldsVisited() {
+        return fieldsVisited;
+    }
+
+    /**
+     * Deepest level of nested objects walked, 1 when only the root object was
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getListsCompared() {
+        return listsCompared;
+    }
+
+    /**
+     * Items of the previous and current versions of every list compared
+     */
+    public long getListItemsCompared() {
+        return listItemsCompared;
+    }
+
+    /**
+     * Size of the largest previous or current list compared
+     */
+    public int getLargestList() {
+        return largestList;
+    }
+
+    /**
+     * Changes handed to the listener. In hasChanges, 1 when a change was found
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    void enter() {
+        if (++depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    /**
+     * Adds the statistics of a fork-join task run at the current depth. Its changes are counted when they are handed
+     * to the listener, and its list time overlaps the one of the other tasks, so neither is added
+     */
+    void merge(DiffStats task) {
+        fieldsVisited += task.fieldsVisited;
+        maxDepth = Math.max(maxDepth, depth + task.maxDepth);
+        listsCompared += task.listsCompared;
+        listItemsCompared += task.listItemsCompared;
+        largestList = Math.max(largestList, task.largestList);
+    }
+
+    void list(int previousSize, int currentSize, long nanos) {
+        listsCompared++;
+        listItemsCompared += previousSize + currentSize;
+        largestList = Math.max(largestList, Math.max(previousSize, currentSize));
+        listNanos += nanos;
+    }
+}
@@ -1,13 +1,59 @@
 package com.difference;
 
-import java.lang.reflect.Field;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
-public class DiffTool<T> {
+/**
+ * Audit tool determining the difference between two objects of the same type.
+ * A DiffTool holds no state between calls, one instance can be shared by any number of threads
+ * and the type metadata it caches is shared by all instances. A DiffTool configured with a parallelism owns
+ * a fork-join pool, which is shut down when it is closed.
+ */
+public class DiffTool<T> implements AutoCloseable {
 
-    private static final String DOT = ".";
-    private static final String ID = "id";
+    // Maximum number of added and removed items of each listUpdate handed to the sink by a join on disk
+    private static final int SPILL_BATCH = 1024;
 
+    private final AccessMode accessMode;
+    private final boolean generatedDiffers;
+    private final boolean orderedLists;
+    private final int orderedListMaxCost;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int batchSize;
+    private final int parallelThreshold;
+    private final boolean fingerprints;
+    private final DiffMetrics metrics;
+    private final PathRules rules;
+    private final boolean compactChanges;
+    private final int spillThreshold;
+    private final Path spillDirectory;
+
+    public DiffTool() {
+        this(new DiffConfig());
+    }
+
+    public DiffTool(DiffConfig config) {
+        this.accessMode = config.getAccessMode();
+        this.generatedDiffers = config.isGeneratedDiffers();
+        this.orderedLists = config.isOrderedLists();
+        this.orderedListMaxCost = config.getOrderedListMaxCost();
+        this.ownsPool = config.getPool() == null && config.getParallelism() > 0;
+        this.pool = config.getPool() != null ? config.getPool()
+                : ownsPool ? new ForkJoinPool(config.getParallelism()) : ForkJoinPool.commonPool();
+        this.batchSize = Math.max(1, config.getBatchSize());
+        this.parallelThreshold = config.getParallelThreshold();
+        this.fingerprints = config.isFingerprints();
+        this.metrics = config.getMetrics();
+        this.rules = PathRules.of(config.getPaths(), config.getMaxDepth());
+        this.compactChanges = config.isCompactChanges();
+        this.spillThreshold = config.getSpillThreshold();
+        this.spillDirectory = config.getSpillDirectory() != null ? config.getSpillDirectory() : Path.of(System.getProperty("java.io.tmpdir"));
+    }
 
     /**
      * Main method for the audit system that is capable of determining the difference
@@ -20,196 +66,1616 @@ public class DiffTool<T> {
         }
 
         List<ChangeType> list = new ArrayList<>();
-        propertyDifference(previous, current, list, null);
+        diff(previous, current, change -> list.add(change));
         return list;
     }
 
     /**
-     * Recursive method to iterate over a complex object that has nested objects to find the modified property/items
+     * Determines the difference of every pair, spreading the pairs over the fork-join pool.
+     * The results are in the order of the pairs
+     * */
+    public List<List<ChangeType>> diffAll(Collection<DiffPair<T>> pairs) {
+        DiffPair<T>[] array = pairs.toArray(new DiffPair[0]);
+        List<ChangeType>[] results = new List[array.length];
+        pool.invoke(new BatchDiff<>(this, array, results, 0, array.length, batchSize));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Streams the difference between two objects of the same type to the listener, change by change.
+     * The traversal stops as soon as the listener returns false
+     * */
+    public void diff(T previous, T current, ChangeListener listener) throws IllegalAccessException {
+
+        if( previous == null || current== null ){
+            throw new AuditException("Provided data is not valid. One of both object is null");
+        }
+
+        traverse(previous, current, new Sink(listener));
+    }
+
+    /**
+     * Checks if two objects of the same type are different, stopping at the first difference.
+     * No change nor property path is built
+     * */
+    public boolean hasChanges(T previous, T current) throws IllegalAccessException {
+
+        if( previous == null || current== null ){
+            throw new AuditException("Provided data is not valid. One of both object is null");
+        }
+
+        Sink sink = new Sink(null);
+        traverse(previous, current, sink);
+        return sink.isStopped();
+    }
+
+    /**
+     * Builds the patch turning the previous object into the current one
+     * */
+    public Patch patch(T previous, T current) throws IllegalAccessException {
+        return patch(diff(previous, current));
+    }
+
+    /**
+     * Builds the patch of the changes found by a diff: new values of the modified fields, items added to or removed from
+     * collections by 'id' or @AuditKey value, modified fields of list items, map entries and array ranges
+     * */
+    public Patch patch(Collection<? extends ChangeType> changes) throws IllegalAccessException {
+        if (compactChanges) {
+            throw new AuditException("Compact changes do not hold the added items, patches are built by a DiffTool without compact changes");
+        }
+        return new Patcher(accessMode).build(changes);
+    }
+
+    /**
+     * Applies a patch to an object in the previous state and returns the patched object.
+     * Mutable objects are updated in place, records are copied with the patched values
+     * */
+    public T apply(Patch patch, T target) throws IllegalAccessException {
+
+        if( patch == null || target == null ){
+            throw new AuditException("Provided data is not valid. The patch or the target is null");
+        }
+
+        return (T) new Patcher(accessMode).apply(patch, target);
+    }
+
+    /**
+     * Three-way diff of two versions, left and right, derived from the same base, walking the three graphs together.
+     * A property changed on one side only gives the change of that side, a property changed the same way on both sides
+     * gives one change and a property changed differently on both sides gives a conflict. Items of keyed lists are matched
+     * on their 'id' or @AuditKey value: an item changed on both sides, or removed on one side and changed on the other,
+     * is a conflict unless both sides end up equal. A subtree changed on one side only is diffed as by diff
+     * */
+    public MergeResult merge(T base, T left, T right) throws IllegalAccessException {
+
+        if( base == null || left == null || right == null ){
+            throw new AuditException("Provided data is not valid. One of the three objects is null");
+        }
+
+        Merge merge = new Merge();
+        mergeObjects(base, left, right, null, merge);
+        while (!merge.stack.isEmpty()) {
+            mergeFields(merge.stack.pop(), merge);
+        }
+        return new MergeResult(merge.changes, merge.conflicts);
+    }
+
+    /**
+     * Shuts down the fork-join pool created for the configured parallelism. The common pool and a pool given
+     * by DiffConfig.setPool are left running
+     * */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a diff from the root objects. Statistics are only gathered when metrics are configured
+     * or the JFR event is enabled, otherwise the traversal runs as is
      */
-    private void propertyDifference(T previous, T current, List<ChangeType> changedProperties, String parent) throws IllegalAccessException {
-        for (Field field : previous.getClass().getDeclaredFields()) {
-            //Identify the parent when is a nested object
-            if (parent == null) {
-                parent = previous.getClass().getSimpleName();
+    private void traverse(T previous, T current, Sink sink) throws IllegalAccessException {
+        DiffEvent event = new DiffEvent();
+        if (metrics == null && !event.isEnabled()) {
+            propertyDifference(previous, current, sink, null);
+            return;
+        }
+
+        DiffStats stats = new DiffStats();
+        stats.rootType = previous.getClass().getSimpleName();
+        sink.stats = stats;
+        event.begin();
+        long start = System.nanoTime();
+        propertyDifference(previous, current, sink, null);
+        stats.durationNanos = System.nanoTime() - start;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.rootType = stats.rootType;
+            event.fieldsVisited = stats.fieldsVisited;
+            event.maxDepth = stats.maxDepth;
+            event.listsCompared = stats.listsCompared;
+            event.listItemsCompared = stats.listItemsCompared;
+            event.largestList = stats.largestList;
+            event.listTime = stats.listNanos;
+            event.changes = stats.changes;
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.record(stats);
+        }
+    }
+
+    /**
+     * Iterates over a complex object that has nested objects to find the modified property/items.
+     * Nested objects are walked depth first from an explicit stack of frames instead of recursing, so the depth of the graph
+     * does not use the thread stack. A pair of objects reached again while it is still being compared closes a cycle,
+     * which is cut there. A shared pair already compared is not compared again: the changes found below it are replayed
+     * at each later path it is reached from
+     */
+    private void propertyDifference(T previous, T current, Sink sink, PropertyPath parent) throws IllegalAccessException {
+        int base = sink.stackSize();
+        push(previous, current, parent, sink);
+        walk(sink, base);
+    }
+
+    /**
+     * Pushes the frame of two nested objects, unless they are known to be unchanged or are already on the stack.
+     * A pair already compared has its changes replayed at this path instead, or is compared again when path rules
+     * are set, as the fields compared depend on the path
+     */
+    private void push(Object previous, Object current, PropertyPath path, Sink sink) throws IllegalAccessException {
+        if (isUnchanged(previous, current, sink.versions)) {
+            return;
+        }
+        Visit visit = sink.visit(previous, current);
+        if (visit.isActive()) {
+            return;
+        }
+        if (visit.isDone() && rules == null) {
+            replay(visit, path, sink);
+            return;
+        }
+        sink.push(previous, current, path, visit);
+        if (sink.stats != null) {
+            sink.stats.enter();
+        }
+    }
+
+    /**
+     * Delivers again the changes found below a pair already compared, moved from the path it was compared at to the given one
+     */
+    private void replay(Visit visit, PropertyPath path, Sink sink) {
+        for (int i = visit.from; i < visit.to && !sink.isStopped(); i++) {
+            ChangeType change = sink.log.get(i);
+            PropertyPath moved = change.getPath() != null ? change.getPath().rebase(visit.path, path) : null;
+            if (moved != null) {
+                sink.accept(copy(change, moved));
             }
-            field.setAccessible(true);
-            Object value1 = field.get(previous);
-            Object value2 = field.get(current);
+        }
+    }
 
-            if (value1 == null && value2 == null) {
-                continue;
+    /**
+     * Copy of a change at another path, sharing its values
+     */
+    private static ChangeType copy(ChangeType change, PropertyPath path) {
+        ChangeType copy;
+        if (change instanceof PropertyUpdate<?> update) {
+            PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+            propertyUpdate.setPrevious(update.getPrevious());
+            propertyUpdate.setCurrent(update.getCurrent());
+            copy = propertyUpdate;
+        } else if (change instanceof ListUpdate<?> update) {
+            ListUpdate<Object> listUpdate = new ListUpdate<>();
+            listUpdate.added = (List<Object>) update.getAdded();
+            listUpdate.removed = (List<Object>) update.getRemoved();
+            listUpdate.edits = (List<ListEdit<Object>>) (List<?>) update.getEdits();
+            copy = listUpdate;
+        } else if (change instanceof MapUpdate<?, ?> update) {
+            MapUpdate<Object, Object> mapUpdate = new MapUpdate<>();
+            mapUpdate.added = (Map<Object, Object>) update.getAdded();
+            mapUpdate.removed = (Map<Object, Object>) update.getRemoved();
+            copy = mapUpdate;
+        } else {
+            ArrayUpdate update = (ArrayUpdate) change;
+            ArrayUpdate arrayUpdate = new ArrayUpdate();
+            arrayUpdate.previous = update.previous;
+            arrayUpdate.current = update.current;
+            arrayUpdate.fromIndex = update.fromIndex;
+            arrayUpdate.previousToIndex = update.previousToIndex;
+            arrayUpdate.currentToIndex = update.currentToIndex;
+            copy = arrayUpdate;
+        }
+        copy.setPath(path);
+        return copy;
+    }
+
+    /**
+     * Processes the frames above the given stack size. The frame on top is advanced until it pushes a nested frame,
+     * which is then processed first, or until it has no field left and is popped
+     */
+    private void walk(Sink sink, int base) throws IllegalAccessException {
+        while (sink.stackSize() > base) {
+            Frame frame = sink.peek();
+            if (sink.isStopped() || !advance(frame, sink)) {
+                sink.pop();
+                if (sink.stats != null) {
+                    sink.stats.exit();
+                }
             }
+        }
+    }
 
-            if (value1 == null || value2 == null) {
-                PropertyUpdate<T> propertyUpdate = new PropertyUpdate<>();
-                propertyUpdate.setProperty(parent + DOT + field.getName());
-                balancePath(propertyUpdate);
-                changedProperties.add(propertyUpdate);
-            } else if (isJavaObject(value1)) { // To identify a custom object
+    /**
+     * Compares the next fields of a frame. Returns true when it stopped after pushing a nested frame, false when it is done
+     */
+    private boolean advance(Frame frame, Sink sink) throws IllegalAccessException {
+        if (frame.fields == null && frame.actions == null) {
+            start(frame, sink);
+            if (sink.peek() != frame) {
+                return true;
+            }
+        }
+        T previous = (T) frame.previous;
+        T current = (T) frame.current;
 
-                if (value1 instanceof List<?> && value2 instanceof List<?>) {
-                    //List items validation
-                    listValidation(value1, value2, field, changedProperties);
-                } else if (!Objects.equals(value1, value2)) { // Property validation
-                    PropertyUpdate<T> propertyUpdate = new PropertyUpdate<>();
-                    propertyUpdate.setProperty(parent + DOT + field.getName());
-                    propertyUpdate.setPrevious(previous);
-                    propertyUpdate.setCurrent(current);
+        if (frame.actions != null) {
+            // Results of a generated differ, replayed in order
+            while (frame.next < frame.actions.size()) {
+                if (sink.isStopped()) {
+                    return false;
+                }
+                Object action = frame.actions.get(frame.next++);
+                if (action instanceof Frame nested) {
+                    push(nested.previous, nested.current, nested.path, sink);
+                    if (sink.peek() != frame) {
+                        return true;
+                    }
+                } else {
+                    sink.forward((ChangeType) action);
+                }
+            }
+            return false;
+        }
 
-                    balancePath(propertyUpdate);
-                    changedProperties.add(propertyUpdate);
+        FieldPlan[] fields = frame.fields;
+        while (frame.next < fields.length) {
+            if (sink.isStopped()) {
+                return false;
+            }
+            FieldPlan field = fields[frame.next++];
+            // Primitive fields are never null nor nested, so they are compared without reading them into objects
+            if (field.isPrimitive()) {
+                if (!field.isEqual(previous, current)) {
+                    emitPropertyUpdate(sink, previous, current, frame.path, field.getName());
                 }
+                continue;
+            }
+            compareValues(previous, current, field.get(previous), field.get(current), frame.path, field.getName(), sink);
+            if (sink.peek() != frame) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves how the fields of a frame are compared: through their generated differ, in parallel, or one by one
+     */
+    private void start(Frame frame, Sink sink) throws IllegalAccessException {
+        T previous = (T) frame.previous;
+        T current = (T) frame.current;
+        TypePlan plan = TypePlan.of(previous.getClass(), accessMode);
+        //Identify the parent when is a nested object
+        if (frame.path == null) {
+            frame.path = plan.getRootPath();
+        }
+        FieldPlan[] fields = fieldsAt(plan, frame.path);
+        if (sink.stats != null) {
+            sink.stats.fieldsVisited += fields.length;
+        }
+
+        // A differ generated at compile time replaces the reflective iteration over the fields, unless rules leave some out
+        Differ<Object> differ = generatedDiffers && fields == plan.getFields() && previous.getClass() == current.getClass()
+                ? Differs.of(previous.getClass()) : null;
+        if (differ != null) {
+            frame.actions = new ArrayList<>();
+            if (sink.wantsChanges()) {
+                // The differ cannot be suspended, its changes and nested objects are kept in order to be replayed
+                Sink actions = new Sink(frame.actions::add);
+                actions.stats = sink.stats;
+                differ.diff(previous, current, frame.path, new Context(actions, frame.actions));
             } else {
-                propertyDifference((T) value1, (T) value2, changedProperties, parent + DOT + field.getName());
+                // Without changes to deliver the order does not matter, nested objects are pushed above the frame
+                differ.diff(previous, current, frame.path, new Context(sink, null));
+            }
+            return;
+        }
+
+        if (plan.getListFieldCount() > 1 && sink.wantsChanges() && parallelThreshold > 0
+                && parallelFieldDifference(previous, current, fields, frame.path, sink)) {
+            frame.actions = List.of();
+            return;
+        }
+        frame.fields = fields;
+    }
+
+    /**
+     * Fields of a type compared at a node of the path trie: every field of its plan, or the ones kept by the rules
+     */
+    private FieldPlan[] fieldsAt(TypePlan plan, PropertyPath path) {
+        return rules == null ? plan.getFields() : rules.fieldsAt(plan, path);
+    }
+
+    /**
+     * Whether both objects are known to be equal without comparing their fields: they are the same instance, they are
+     * objects of the same class with the same non null @AuditVersion (unless versions are not trusted), or fingerprints
+     * are enabled and both are Fingerprinted objects of the same class with the same fingerprint
+     */
+    private boolean isUnchanged(Object previous, Object current, boolean versions) throws IllegalAccessException {
+        if (previous == current) {
+            return true;
+        }
+        if (previous == null || current == null || previous.getClass() != current.getClass()) {
+            return false;
+        }
+        if (versions) {
+            FieldPlan version = TypePlan.of(previous.getClass(), accessMode).getVersion();
+            if (version != null && version.isEqual(previous, current) && (version.isPrimitive() || version.get(previous) != null)) {
+                return true;
+            }
+        }
+        return fingerprints && previous instanceof Fingerprinted p && current instanceof Fingerprinted c
+                && p.auditFingerprint() == c.auditFingerprint();
+    }
+
+    /**
+     * Compares the fields of both objects in parallel when at least two of their lists reach the parallel threshold.
+     * Each large list is compared in its own fork-join task and the other fields in the current one, then the changes
+     * are handed to the sink in field order. Returns false without comparing anything when the lists are too small
+     */
+    private boolean parallelFieldDifference(T previous, T current, FieldPlan[] fields, PropertyPath parent, Sink sink) throws IllegalAccessException {
+        boolean[] large = new boolean[fields.length];
+        int largeCount = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].isList()) {
+                large[i] = isLarge(fields[i].get(previous)) || isLarge(fields[i].get(current));
+                largeCount += large[i] ? 1 : 0;
+            }
+        }
+        if (largeCount < 2) {
+            return false;
+        }
+
+        List<ChangeType>[] changes = new List[fields.length];
+        Sink[] sinks = new Sink[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            changes[i] = new ArrayList<>();
+            sinks[i] = sink.fork(changes[i]);
+        }
+        invoke(ForkJoinTask.adapt(() -> {
+            ForkJoinTask<?>[] tasks = new ForkJoinTask[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                FieldPlan field = fields[i];
+                Sink fieldSink = sinks[i];
+                if (large[i]) {
+                    tasks[i] = ForkJoinTask.adapt(() -> fieldDifference(previous, current, field, parent, fieldSink)).fork();
+                }
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (large[i]) {
+                    tasks[i].join();
+                } else {
+                    fieldDifference(previous, current, fields[i], parent, sinks[i]);
+                }
+            }
+            return null;
+        }));
+
+        for (int i = 0; i < fields.length; i++) {
+            if (sink.stats != null) {
+                sink.stats.merge(sinks[i].stats);
+            }
+            for (ChangeType change : changes[i]) {
+                if (sink.isStopped()) {
+                    return true;
+                }
+                sink.accept(change);
+            }
+        }
+        return true;
+    }
+
+    private boolean isLarge(Object value) {
+        return value instanceof List<?> list && list.size() >= parallelThreshold;
+    }
+
+    /**
+     * Collects the changes of one field of both objects into the sink of its task
+     */
+    private Void fieldDifference(T previous, T current, FieldPlan field, PropertyPath parent, Sink sink) throws IllegalAccessException {
+        if (field.isPrimitive()) {
+            if (!field.isEqual(previous, current)) {
+                emitPropertyUpdate(sink, previous, current, parent, field.getName());
+            }
+        } else {
+            compareValues(previous, current, field.get(previous), field.get(current), parent, field.getName(), sink);
+            walk(sink, 0);
+        }
+        return null;
+    }
+
+    /**
+     * Runs a fork-join task in the pool of this DiffTool, or in the current pool when already running in one
+     */
+    private <R> R invoke(ForkJoinTask<R> task) throws IllegalAccessException {
+        try {
+            return ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+        } catch (RuntimeException e) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IllegalAccessException access) {
+                    throw access;
+                }
             }
+            throw e;
+        }
+    }
+
+    /**
+     * Compares the values of a non primitive field of both objects
+     */
+    private void compareValues(T previous, T current, Object value1, Object value2, PropertyPath parent, String fieldName,
+                               Sink sink) throws IllegalAccessException {
+        if (sink.isStopped() || (value1 == null && value2 == null)) {
+            return;
+        }
+
+        if (value1 == null || value2 == null) {
+            emitPropertyUpdate(sink, previous, current, parent, fieldName);
+            return;
+        }
+
+        ValueKind kind = ValueKind.of(value1);
+        // The same map, set or array holds no change. The same list still gets its (empty) listUpdate
+        if (value1 == value2 && kind != ValueKind.LIST) {
+            return;
+        }
+        if (kind.isNested()) { // To identify a custom object
+            push(value1, value2, parent.child(fieldName), sink);
+        } else if (kind == ValueKind.LIST && value2 instanceof List<?>) {
+            //List items validation
+            listValidation(value1, value2, parent.child(fieldName), sink);
+        } else if (kind == ValueKind.MAP && value2 instanceof Map<?, ?>) {
+            mapDifference((Map<Object, Object>) value1, (Map<Object, Object>) value2, parent.child(fieldName), sink);
+        } else if (kind == ValueKind.SET && value2 instanceof Set<?>) {
+            setDifference((Set<T>) value1, (Set<T>) value2, parent.child(fieldName), sink);
+        } else if (kind == ValueKind.ARRAY && value1.getClass() == value2.getClass()) {
+            arrayDifference(value1, value2, parent.child(fieldName), sink);
+        } else if (!Objects.equals(value1, value2)) { // Property validation
+            emitPropertyUpdate(sink, previous, current, parent, fieldName);
         }
     }
 
+    /**
+     * Compares two maps by key: keys only in one of them are added/removed, keys in both with a different
+     * value get a propertyUpdate 'map[key]' holding both values
+     */
+    private void mapDifference(Map<Object, Object> previous, Map<Object, Object> current, PropertyPath path, Sink sink) throws IllegalAccessException {
+        MapUpdate<Object, Object> mapUpdate = new MapUpdate<>();
+        mapUpdate.setAdded(new LinkedHashMap<>());
+        mapUpdate.setRemoved(new LinkedHashMap<>());
+        List<Object> modified = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : previous.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                mapUpdate.getRemoved().put(entry.getKey(), entry.getValue());
+            } else if (!Objects.equals(entry.getValue(), current.get(entry.getKey()))) {
+                modified.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<Object, Object> entry : current.entrySet()) {
+            if (!previous.containsKey(entry.getKey())) {
+                mapUpdate.getAdded().put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (!sink.wantsChanges()) {
+            if (!modified.isEmpty() || !mapUpdate.getAdded().isEmpty() || !mapUpdate.getRemoved().isEmpty()) {
+                sink.stop();
+            }
+            return;
+        }
+        if (!mapUpdate.getAdded().isEmpty() || !mapUpdate.getRemoved().isEmpty()) {
+            mapUpdate.setPath(path);
+            if (compactChanges) {
+                mapUpdate.setAdded(compact(mapUpdate.getAdded()));
+                mapUpdate.setRemoved(compact(mapUpdate.getRemoved()));
+            }
+            sink.accept(mapUpdate);
+        }
+        for (Object key : modified) {
+            if (sink.isStopped()) {
+                return;
+            }
+            PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+            propertyUpdate.setPath(PropertyPath.entry(path, key));
+            // Modified values are kept whole even with compact changes: the keys of two versions of a nested value are equal
+            propertyUpdate.setPrevious(previous.get(key));
+            propertyUpdate.setCurrent(current.get(key));
+            sink.accept(propertyUpdate);
+        }
+    }
+
+    /**
+     * Compares two sets by membership, reporting a listUpdate with the added/removed items when they differ
+     */
+    private void setDifference(Set<T> previous, Set<T> current, PropertyPath path, Sink sink) throws IllegalAccessException {
+        ListUpdate<T> listUpdate = new ListUpdate<>();
+        listUpdate.setAdded(new ArrayList<>());
+        listUpdate.setRemoved(new ArrayList<>());
+        for (T item : previous) {
+            if (!current.contains(item)) {
+                listUpdate.getRemoved().add(item);
+            }
+        }
+        for (T item : current) {
+            if (!previous.contains(item)) {
+                listUpdate.getAdded().add(item);
+            }
+        }
+        if (!listUpdate.getAdded().isEmpty() || !listUpdate.getRemoved().isEmpty()) {
+            listUpdate.setPath(path);
+            emitListUpdate(sink, listUpdate);
+        }
+    }
+
+    /**
+     * Compares two arrays of the same type, reporting the range of indexes that differ
+     */
+    private void arrayDifference(Object previous, Object current, PropertyPath path, Sink sink) {
+        int[] range = ArrayDiff.changedRange(previous, current);
+        if (range == null) {
+            return;
+        }
+        if (!sink.wantsChanges()) {
+            sink.stop();
+            return;
+        }
+        ArrayUpdate arrayUpdate = new ArrayUpdate();
+        arrayUpdate.setPath(path);
+        if (compactChanges) {
+            arrayUpdate.setPrevious(ArrayDiff.slice(previous, range[0], range[1]));
+            arrayUpdate.setCurrent(ArrayDiff.slice(current, range[0], range[2]));
+        } else {
+            arrayUpdate.setPrevious(previous);
+            arrayUpdate.setCurrent(current);
+        }
+        arrayUpdate.setFromIndex(range[0]);
+        arrayUpdate.setPreviousToIndex(range[1]);
+        arrayUpdate.setCurrentToIndex(range[2]);
+        sink.accept(arrayUpdate);
+    }
+
+    /**
+     * Builds the propertyUpdate of a modified property and hands it to the sink.
+     * It holds the objects owning the property, or only the values of the property with compact changes
+     */
+    private void emitPropertyUpdate(Sink sink, T previous, T current, PropertyPath parent, String fieldName) throws IllegalAccessException {
+        if (!sink.wantsChanges()) {
+            sink.stop();
+            return;
+        }
+        PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+        propertyUpdate.setPath(parent.child(fieldName));
+        if (compactChanges) {
+            propertyUpdate.setPrevious(TypePlan.of(previous.getClass(), accessMode).getField(fieldName).get(previous));
+            propertyUpdate.setCurrent(TypePlan.of(current.getClass(), accessMode).getField(fieldName).get(current));
+        } else {
+            propertyUpdate.setPrevious(previous);
+            propertyUpdate.setCurrent(current);
+        }
+        sink.accept(propertyUpdate);
+    }
+
+    /**
+     * Value kept by a compact change for an item or map value: the 'id' or @AuditKey value of a nested object,
+     * the value itself otherwise
+     */
+    private Object compact(Object value) throws IllegalAccessException {
+        if (value == null || !ValueKind.of(value).isNested()) {
+            return value;
+        }
+        FieldPlan key = TypePlan.of(value.getClass(), accessMode).getKey();
+        return key == null ? value : key.get(value);
+    }
+
+    private List<T> compact(List<T> items) throws IllegalAccessException {
+        Object[] values = new Object[items.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = compact(items.get(i));
+        }
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    private Map<Object, Object> compact(Map<Object, Object> entries) throws IllegalAccessException {
+        Map<Object, Object> values = new LinkedHashMap<>((int) (entries.size() / 0.75f) + 1);
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            values.put(entry.getKey(), compact(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
     /**
      * Validates the id, removed/added/modified items in a list and builds the response
      * */
-    private void listValidation(Object value1, Object value2, Field field, List<ChangeType> changedProperties) throws IllegalAccessException {
+    private void listValidation(Object value1, Object value2, PropertyPath path, Sink sink) throws IllegalAccessException {
+        DiffStats stats = sink.stats;
+        if (stats == null) {
+            compareLists(value1, value2, path, sink);
+            return;
+        }
+
+        ListJoinEvent event = new ListJoinEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ListUpdate<T> listUpdate = compareLists(value1, value2, path, sink);
+        int previousSize = ((List<?>) value1).size();
+        int currentSize = ((List<?>) value2).size();
+        stats.list(previousSize, currentSize, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.property = path.getName();
+            event.previousSize = previousSize;
+            event.currentSize = currentSize;
+            event.spilled = listUpdate == null;
+            if (listUpdate != null) {
+                event.added = listUpdate.getAdded().size();
+                event.removed = listUpdate.getRemoved().size();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Compares two lists and returns their listUpdate, once it has been handed to the sink.
+     * Returns null when the lists were joined on disk, their changes having been handed to the sink in several listUpdates
+     */
+    private ListUpdate<T> compareLists(Object value1, Object value2, PropertyPath path, Sink sink) throws IllegalAccessException {
+        List<T> previousList = (List<T>) value1;
+        List<T> currentList = (List<T>) value2;
         ListUpdate<T> listUpdate = new ListUpdate<>();
-        PropertyUpdate<T> propertyUpdate = new PropertyUpdate<>();
+        // Lists keep their field name as property, their path locates them when the change is turned into a patch
+        listUpdate.setProperty(path.getName());
+        listUpdate.path = path;
+        listUpdate.setRemoved(new ArrayList<>());
+        listUpdate.setAdded(new ArrayList<>());
+
+        if (previousList.isEmpty() && currentList.isEmpty()) {
+            emitListUpdate(sink, listUpdate);
+            return listUpdate;
+        }
 
         // Validate if the objects inside the list have id or @AuditKey
         // Only one object is enough for this as both are from the same type
-        String idName = validateId(value1);
+        List<T> sample = previousList.isEmpty() ? currentList : previousList;
+        if (orderedLists && keyOf(sample) == null) {
+            orderedListDifference(previousList, currentList, listUpdate);
+            emitListUpdate(sink, listUpdate);
+            return listUpdate;
+        }
+        FieldPlan key = validateId(sample);
+        if (previousList == currentList) {
+            emitListUpdate(sink, listUpdate);
+            return listUpdate;
+        }
 
-        //Validate if an object inside a list was added or removed
-        removedOrAdded(value1, value2, listUpdate, idName);
-        listUpdate.setProperty(field.getName());
-        changedProperties.add(listUpdate);
+        if (spillThreshold > 0 && Math.max(previousList.size(), currentList.size()) > spillThreshold) {
+            spilledJoin(previousList, currentList, key, path, listUpdate, sink);
+            return null;
+        }
+        joinLists(previousList, currentList, key, path, listUpdate, sink);
+        return listUpdate;
+    }
 
-        // Validate if an object inside a list was modified
-        modifiedListItem(propertyUpdate, value1, value2, idName, field.getName());
-        changedProperties.add(propertyUpdate);
+    /**
+     * Hands the listUpdate to the sink. It is always delivered, but it is only a change when an item was added or removed
+     */
+    private void emitListUpdate(Sink sink, ListUpdate<T> listUpdate) throws IllegalAccessException {
+        if (sink.wantsChanges()) {
+            if (compactChanges) {
+                listUpdate.setAdded(compact(listUpdate.getAdded()));
+                listUpdate.setRemoved(compact(listUpdate.getRemoved()));
+            }
+            sink.accept(listUpdate);
+        } else if (!listUpdate.getAdded().isEmpty() || !listUpdate.getRemoved().isEmpty()
+                || (listUpdate.getEdits() != null && !listUpdate.getEdits().isEmpty())) {
+            sink.stop();
+        }
     }
 
     /**
-     * Checks if an object is a java object
-     * More restrictions may be added
-     * */
-    private boolean isJavaObject(Object object) {
-        String name = object.getClass().getName();
-        return name.startsWith("java.lang") || name.startsWith("java.util"); //Add more names
+     * Validates if the objects inside the list have 'id' or @AuditKey
+     */
+    private FieldPlan validateId(List<T> list) {
+        FieldPlan key = keyOf(list);
+
+        if (key == null) {
+            throw new AuditException("The audit system lacks the information it needs to determine what has changed");
+        }
+        return key;
     }
 
     /**
-     * Erases the leading parent where the updated property is on the root
+     * Returns the 'id' or @AuditKey field of the items of a non empty list, null when there is none
      */
-    private void balancePath(PropertyUpdate<T> propertyUpdate) {
-        String[] path = propertyUpdate.getProperty().split("\\.");
-        if (path.length <= 2) {
-            propertyUpdate.setProperty(path[1]);
+    private FieldPlan keyOf(List<T> list) {
+        T item = list.get(0);
+        if (item == null || !ValueKind.of(item).isNested()) {
+            return null;
         }
+        return TypePlan.of(item.getClass(), accessMode).getKey();
     }
 
     /**
-     * Validates if the objects inside the list have 'id' or @AuditKey
+     * Compares a list without 'id' nor @AuditKey by position
      */
-    private String validateId(Object value) {
-        List<T> res = null;
-        for (T innerList : (List<T>) value) {
-            res = (List<T>) Arrays.stream(innerList.getClass().getDeclaredFields()).filter(f -> ID.equals(f.getName()) ||
-                    f.isAnnotationPresent(AuditKey.class)).toList();
+    private void orderedListDifference(List<T> previousList, List<T> currentList, ListUpdate<T> listUpdate) {
+        List<ListEdit<T>> edits = MyersDiff.diff(previousList, currentList, orderedListMaxCost);
+        for (ListEdit<T> edit : edits) {
+            if (edit.getType() == ListEdit.Type.DELETE) {
+                listUpdate.getRemoved().addAll(edit.getItems());
+            } else if (edit.getType() == ListEdit.Type.INSERT) {
+                listUpdate.getAdded().addAll(edit.getItems());
+            }
         }
+        listUpdate.setEdits(edits);
+    }
 
-        if (res == null || res.isEmpty()) {
-            throw new AuditException("The audit system lacks the information it needs to determine what has changed");
+    /**
+     * Hash join of both lists on the id/@AuditKey value in a single pass over each list.
+     * Items only in the current list are added, items only in the previous list are removed and
+     * every matched item that is not equal gets one propertyUpdate per modified field.
+     * The listUpdate is handed to the sink before the modified items, which are compared last
+     */
+    private void joinLists(List<T> previousList, List<T> currentList, FieldPlan key, PropertyPath path,
+                           ListUpdate<T> listUpdate, Sink sink) throws IllegalAccessException {
+        int[] matches = key.isIntegral() ? integralJoin(previousList, currentList, key, listUpdate) : null;
+        if (matches == null) {
+            matches = objectJoin(previousList, currentList, key, listUpdate);
+        }
+        emitListUpdate(sink, listUpdate);
+
+        if (sink.wantsChanges() && parallelThreshold > 0 && matches.length >= parallelThreshold) {
+            ModifiedItems task = new ModifiedItems(previousList, currentList, matches, key, path, sink, 0, matches.length);
+            List<ChangeType> changes = invoke(task);
+            if (sink.stats != null) {
+                sink.stats.merge(task.stats);
+            }
+            for (ChangeType change : changes) {
+                if (sink.isStopped()) {
+                    return;
+                }
+                sink.accept(change);
+            }
+            return;
+        }
+
+        for (int j = 0; j < matches.length && !sink.isStopped(); j++) {
+            if (matches[j] < 0) {
+                continue;
+            }
+            T previous = previousList.get(matches[j]);
+            T current = currentList.get(j);
+            if (!isUnchanged(previous, current, sink.versions) && !Objects.equals(previous, current)) {
+                modifiedListItem(previous, current, key, path, sink);
+            }
         }
-        return ((Field) res.get(0)).getName();
     }
 
     /**
-     * Validates if an object inside a list was modified
+     * Matches the items of both lists on their key through a hash map. Returns the index of the previous item matched
+     * by each current item, -1 for an added item
      */
-    private void modifiedListItem(PropertyUpdate<T> propertyUpdate, Object value1, Object value2, String idName, String fieldName) throws IllegalAccessException {
+    private int[] objectJoin(List<T> previousList, List<T> currentList, FieldPlan key, ListUpdate<T> listUpdate) throws IllegalAccessException {
+        Map<Object, Integer> previousIndex = new HashMap<>((int) (previousList.size() / 0.75f) + 1);
+        for (int i = 0; i < previousList.size(); i++) {
+            previousIndex.put(key.get(previousList.get(i)), i);
+        }
 
-        Map<T, Object> value1Map = new HashMap<>();
-        Map<T, Object> value2Map = new HashMap<>();
+        BitSet matched = new BitSet(previousList.size());
+        int[] matches = new int[currentList.size()];
+        for (int j = 0; j < currentList.size(); j++) {
+            T current = currentList.get(j);
+            Integer index = previousIndex.get(key.get(current));
+            if (index == null) {
+                listUpdate.getAdded().add(current);
+                matches[j] = -1;
+                continue;
+            }
+            matched.set(index);
+            matches[j] = index;
+        }
 
-        buildValueMap(value1Map, idName, value1);
-        buildValueMap(value2Map, idName, value2);
+        // Duplicated keys keep the last item, as it is the one the join matched against
+        for (int i = 0; i < previousList.size(); i++) {
+            if (!matched.get(i) && previousIndex.get(key.get(previousList.get(i))) == i) {
+                listUpdate.getRemoved().add(previousList.get(i));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Same join on an integral key, through a LongIndex: keys are read as longs, without boxing nor map entries.
+     * Returns null, with nothing added to the listUpdate, when a boxed key is null, so the join falls back to the hash map
+     */
+    private int[] integralJoin(List<T> previousList, List<T> currentList, FieldPlan key, ListUpdate<T> listUpdate) throws IllegalAccessException {
+        // Each key is read once, the reads failing on the first null boxed key
+        long[] previousKeys = new long[previousList.size()];
+        long[] currentKeys = new long[currentList.size()];
+        if (!key.getLongs(previousList, previousKeys) || !key.getLongs(currentList, currentKeys)) {
+            return null;
+        }
+        LongIndex previousIndex = new LongIndex(previousKeys.length);
+        for (int i = 0; i < previousKeys.length; i++) {
+            previousIndex.put(previousKeys[i], i);
+        }
+        BitSet matched = new BitSet(previousKeys.length);
+        int[] matches = new int[currentKeys.length];
+        for (int j = 0; j < currentKeys.length; j++) {
+            int index = previousIndex.get(currentKeys[j]);
+            if (index < 0) {
+                listUpdate.getAdded().add(currentList.get(j));
+                matches[j] = -1;
+                continue;
+            }
+            matched.set(index);
+            matches[j] = index;
+        }
 
-        // To take away the deleted ones
-        Map<T, Object> removedMap = new HashMap<>(value1Map);
-        for (Map.Entry<T, Object> entry : value2Map.entrySet()) {
-            removedMap.entrySet().removeIf(ent -> ent.getKey().equals(entry.getKey()) && ent.getValue().equals(entry.getValue()));
+        // Duplicated keys keep the last item, as it is the one the join matched against
+        for (int i = matched.nextClearBit(0); i < previousKeys.length; i = matched.nextClearBit(i + 1)) {
+            if (previousIndex.get(previousKeys[i]) == i) {
+                listUpdate.getRemoved().add(previousList.get(i));
+            }
         }
+        return matches;
+    }
 
-        // To take away the added ones
-        Map<T, Object> addedMap = new HashMap<>(value2Map);
-        for (Map.Entry<T, Object> entry : value1Map.entrySet()) {
-            addedMap.entrySet().removeIf(ent -> ent.getKey().equals(entry.getKey()) && ent.getValue().equals(entry.getValue()));
+    /**
+     * Merge join of lists larger than the spill threshold: instead of being indexed in memory, the keys of both lists are
+     * sorted on disk (KeyRuns) and read back in key order. Added and removed items are handed to the sink in listUpdates of
+     * at most SPILL_BATCH items and modified items as soon as they are matched, so the heap use does not grow with the lists.
+     * Changes come in key order instead of list order. Duplicated keys keep the last item, as in the hash join
+     */
+    private void spilledJoin(List<T> previousList, List<T> currentList, FieldPlan key, PropertyPath path,
+                             ListUpdate<T> listUpdate, Sink sink) throws IllegalAccessException {
+        // Primitive integral keys are sorted on their value, other keys on their hash code: items sharing a hash are then
+        // matched on their keys
+        boolean exact = key.isIntegral() && key.isPrimitive();
+        KeyRuns.Keys previousKeys = exact ? i -> key.getLong(previousList.get(i)) : i -> Objects.hashCode(key.get(previousList.get(i)));
+        KeyRuns.Keys currentKeys = exact ? j -> key.getLong(currentList.get(j)) : j -> Objects.hashCode(key.get(currentList.get(j)));
+        boolean emitted = false;
+        try (KeyRuns previousRuns = KeyRuns.sort(spillDirectory, previousList.size(), spillThreshold, previousKeys);
+             KeyRuns currentRuns = KeyRuns.sort(spillDirectory, currentList.size(), spillThreshold, currentKeys)) {
+            IntList previousGroup = new IntList();
+            IntList currentGroup = new IntList();
+            while ((previousRuns.hasNext() || currentRuns.hasNext()) && !sink.isStopped()) {
+                long next = !currentRuns.hasNext() ? previousRuns.peekKey() : !previousRuns.hasNext() ? currentRuns.peekKey()
+                        : Math.min(previousRuns.peekKey(), currentRuns.peekKey());
+                previousGroup.clear();
+                currentGroup.clear();
+                while (previousRuns.hasNext() && previousRuns.peekKey() == next) {
+                    previousRuns.next();
+                    previousGroup.add(previousRuns.position());
+                }
+                while (currentRuns.hasNext() && currentRuns.peekKey() == next) {
+                    currentRuns.next();
+                    currentGroup.add(currentRuns.position());
+                }
+                if (exact) {
+                    joinGroup(previousList, currentList, previousGroup, currentGroup, key, path, listUpdate, sink);
+                } else {
+                    joinHashGroup(previousList, currentList, previousGroup, currentGroup, key, path, listUpdate, sink);
+                }
+                if (listUpdate.getAdded().size() + listUpdate.getRemoved().size() >= SPILL_BATCH) {
+                    emitListUpdate(sink, listUpdate);
+                    emitted = true;
+                    listUpdate = nextBatch(listUpdate);
+                }
+            }
         }
+        // The listUpdate is always delivered at least once, as for the lists joined in memory
+        if (!emitted || !listUpdate.getAdded().isEmpty() || !listUpdate.getRemoved().isEmpty()) {
+            emitListUpdate(sink, listUpdate);
+        }
+    }
 
-        //Builds the propertyUpdate
-        buildPropertyUpdate(removedMap, addedMap, propertyUpdate, idName, fieldName);
+    /**
+     * Joins the items of both lists sharing the same key: every current item is matched with the last previous item,
+     * or added when there is none. The last previous item is removed when no current item has its key
+     */
+    private void joinGroup(List<T> previousList, List<T> currentList, IntList previousGroup, IntList currentGroup,
+                           FieldPlan key, PropertyPath path, ListUpdate<T> listUpdate, Sink sink) throws IllegalAccessException {
+        if (previousGroup.size == 0) {
+            for (int j = 0; j < currentGroup.size; j++) {
+                listUpdate.getAdded().add(currentList.get(currentGroup.values[j]));
+            }
+            return;
+        }
+        T previous = previousList.get(previousGroup.values[previousGroup.size - 1]);
+        if (currentGroup.size == 0) {
+            listUpdate.getRemoved().add(previous);
+            return;
+        }
+        for (int j = 0; j < currentGroup.size && !sink.isStopped(); j++) {
+            T current = currentList.get(currentGroup.values[j]);
+            if (!isUnchanged(previous, current, sink.versions) && !Objects.equals(previous, current)) {
+                modifiedListItem(previous, current, key, path, sink);
+            }
+        }
     }
 
     /**
-     * Builds the propertyUpdate object with the changes found in the items in the list
-     *
-     * */
-    private void buildPropertyUpdate(Map<T, Object> removedMap, Map<T, Object> addedMap, PropertyUpdate<T> propertyUpdate,
-                                     String idName, String fieldName) throws IllegalAccessException {
-        for (Map.Entry<T, Object> entry : removedMap.entrySet()) {
-            Object current = addedMap.get(entry.getKey());
-            Object previous = entry.getValue();
-
-            //To get the modified object
-            if (current != null && !current.equals(previous)) {
-
-                for (Field currentField : current.getClass().getDeclaredFields()) {
-                    currentField.setAccessible(true);
-                    for (Field previousField : previous.getClass().getDeclaredFields()) {
-                        previousField.setAccessible(true);
-                        if (currentField.getName().equals(previousField.getName()) &&
-                                !((T) previousField.get(previous)).equals((T) currentField.get(current))) {
-                            propertyUpdate.setProperty(fieldName + "[" + idName + "]." + currentField.getName());
+     * Joins the items of both lists sharing the same key hash, which may have different keys
+     */
+    private void joinHashGroup(List<T> previousList, List<T> currentList, IntList previousGroup, IntList currentGroup,
+                               FieldPlan key, PropertyPath path, ListUpdate<T> listUpdate, Sink sink) throws IllegalAccessException {
+        if (previousGroup.size + currentGroup.size == 1) {
+            joinGroup(previousList, currentList, previousGroup, currentGroup, key, path, listUpdate, sink);
+            return;
+        }
+        Map<Object, T> last = new LinkedHashMap<>();
+        for (int i = 0; i < previousGroup.size; i++) {
+            T previous = previousList.get(previousGroup.values[i]);
+            last.put(key.get(previous), previous);
+        }
+        Set<Object> matched = new HashSet<>();
+        for (int j = 0; j < currentGroup.size && !sink.isStopped(); j++) {
+            T current = currentList.get(currentGroup.values[j]);
+            Object id = key.get(current);
+            T previous = last.get(id);
+            if (previous == null) {
+                listUpdate.getAdded().add(current);
+                continue;
+            }
+            matched.add(id);
+            if (!isUnchanged(previous, current, sink.versions) && !Objects.equals(previous, current)) {
+                modifiedListItem(previous, current, key, path, sink);
+            }
+        }
+        for (Map.Entry<Object, T> entry : last.entrySet()) {
+            if (!matched.contains(entry.getKey())) {
+                listUpdate.getRemoved().add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Empty listUpdate of the same list, taking the added and removed items that come after a delivered batch
+     */
+    private ListUpdate<T> nextBatch(ListUpdate<T> listUpdate) {
+        ListUpdate<T> next = new ListUpdate<>();
+        next.setProperty(listUpdate.getProperty());
+        next.path = listUpdate.path;
+        next.setRemoved(new ArrayList<>());
+        next.setAdded(new ArrayList<>());
+        return next;
+    }
+
+    /**
+     * Growable array of list positions, reused for every group of a merge join
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Builds one propertyUpdate for each modified field of an item inside a list. The fields of the items are the ones
+     * compared at the path of the list
+     */
+    private void modifiedListItem(T previous, T current, FieldPlan key, PropertyPath path, Sink sink) throws IllegalAccessException {
+        Object id = null;
+        FieldPlan[] fields = fieldsAt(TypePlan.of(current.getClass(), accessMode), path);
+        if (sink.stats != null) {
+            sink.stats.fieldsVisited += fields.length;
+        }
+        for (FieldPlan field : fields) {
+            if (sink.isStopped()) {
+                return;
+            }
+            if (!field.isEqual(previous, current)) {
+                if (!sink.wantsChanges()) {
+                    sink.stop();
+                    return;
+                }
+                if (id == null) {
+                    id = key.get(current);
+                }
+                PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+                propertyUpdate.setPath(PropertyPath.item(path, id, field.getName()));
+                propertyUpdate.setPrevious(compactChanges ? field.get(previous) : previous);
+                propertyUpdate.setCurrent(compactChanges ? field.get(current) : current);
+                sink.accept(propertyUpdate);
+            }
+        }
+    }
+
+    /**
+     * Fork-join task comparing a range of the matched items of a keyed list.
+     * Ranges are split in halves and their changes concatenated in item order
+     */
+    private final class ModifiedItems extends RecursiveTask<List<ChangeType>> {
+        private final List<T> previousList;
+        private final List<T> currentList;
+        private final int[] matches;
+        private final FieldPlan key;
+        private final PropertyPath path;
+        private final Sink outer;
+        private final int from;
+        private final int to;
+        // Statistics of the range, null when they are not gathered
+        private DiffStats stats;
+
+        private ModifiedItems(List<T> previousList, List<T> currentList, int[] matches, FieldPlan key, PropertyPath path,
+                              Sink outer, int from, int to) {
+            this.previousList = previousList;
+            this.currentList = currentList;
+            this.matches = matches;
+            this.key = key;
+            this.path = path;
+            this.outer = outer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ChangeType> compute() {
+            if (to - from <= Math.max(256, parallelThreshold / 8)) {
+                List<ChangeType> changes = new ArrayList<>();
+                Sink sink = outer.fork(changes);
+                try {
+                    for (int j = from; j < to; j++) {
+                        T previous = matches[j] < 0 ? null : previousList.get(matches[j]);
+                        T current = currentList.get(j);
+                        if (previous != null && !isUnchanged(previous, current, sink.versions) && !Objects.equals(previous, current)) {
+                            modifiedListItem(previous, current, key, path, sink);
                         }
                     }
+                } catch (IllegalAccessException e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+                stats = sink.stats;
+                return changes;
+            }
+            int middle = (from + to) >>> 1;
+            ModifiedItems left = new ModifiedItems(previousList, currentList, matches, key, path, outer, from, middle);
+            left.fork();
+            ModifiedItems right = new ModifiedItems(previousList, currentList, matches, key, path, outer, middle, to);
+            List<ChangeType> rightChanges = right.compute();
+            List<ChangeType> changes = left.join();
+            changes.addAll(rightChanges);
+            stats = left.stats;
+            if (stats != null) {
+                stats.merge(right.stats);
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Destination of the changes found during a traversal. Without listener only the presence of a change is recorded
+     */
+    private static final class Sink {
+        private final ChangeListener listener;
+        private boolean stopped;
+        // Whether objects with the same @AuditVersion are skipped, false when both sides of a merge are compared
+        private boolean versions = true;
+        // Statistics of the diff, null when they are not gathered
+        private DiffStats stats;
+        // Frames of the traversal, reused by stack level
+        private Frame[] frames;
+        private int size;
+        // Pairs of objects on the stack or already compared, by previous object. The first pair is kept apart so that
+        // the map is only created for graphs with nested objects
+        private Object firstPrevious;
+        private Visit first;
+        private IdentityHashMap<Object, Visit> visits;
+        // Changes found below nested objects, in order, which a pair already compared replays from its range
+        private List<ChangeType> log;
+        // Sink a fork-join task collects its changes for, whose stack is read but not changed while the task runs
+        private Sink outer;
+
+        private Sink(ChangeListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Sink of a fork-join task collecting changes for this sink. It gathers its own statistics, merged into the ones
+         * of this sink once the task is joined, and cuts the cycles closing on the pairs on the stack of this sink
+         */
+        Sink fork(List<ChangeType> changes) {
+            Sink task = new Sink(changes::add);
+            task.versions = versions;
+            task.stats = stats != null ? new DiffStats() : null;
+            task.outer = this;
+            return task;
+        }
+
+        /**
+         * Whether changes have to be built and delivered
+         */
+        boolean wantsChanges() {
+            return listener != null;
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        void stop() {
+            if (!stopped && stats != null) {
+                stats.changes++;
+            }
+            stopped = true;
+        }
+
+        int stackSize() {
+            return size;
+        }
+
+        Frame peek() {
+            return size == 0 ? null : frames[size - 1];
+        }
+
+        void push(Object previous, Object current, PropertyPath path, Visit visit) {
+            if (frames == null) {
+                frames = new Frame[8];
+            } else if (size == frames.length) {
+                frames = Arrays.copyOf(frames, size * 2);
+            }
+            Frame frame = frames[size];
+            if (frame == null) {
+                frame = new Frame();
+                frames[size] = frame;
+            }
+            frame.reset(previous, current, path);
+            frame.visit = visit;
+            visit.start(path, log != null ? log.size() : 0);
+            size++;
+        }
+
+        void pop() {
+            Frame frame = frames[--size];
+            frame.visit.end(log != null ? log.size() : 0);
+            frame.visit = null;
+            frame.reset(null, null, null);
+        }
+
+        /**
+         * Visit of a pair of objects, registered on its first visit. A pair on the stack of the outer sink is returned
+         * as is, so the cycle closing on it is cut
+         */
+        Visit visit(Object previous, Object current) {
+            Visit known = find(previous, current);
+            if (known != null) {
+                return known;
+            }
+            for (Sink sink = outer; sink != null; sink = sink.outer) {
+                Visit active = sink.find(previous, current);
+                if (active != null && active.isActive()) {
+                    return active;
                 }
-                propertyUpdate.setPrevious((T) previous);
-                propertyUpdate.setCurrent((T) current);
-                break;
+            }
+            Visit visit = new Visit(current);
+            if (visits == null && first == null) {
+                firstPrevious = previous;
+                first = visit;
+                return visit;
+            }
+            if (visits == null) {
+                visits = new IdentityHashMap<>(16);
+                visits.put(firstPrevious, first);
+            }
+            // A previous object compared with more than one current object keeps a chain of visits
+            visit.next = visits.get(previous);
+            visits.put(previous, visit);
+            return visit;
+        }
+
+        private Visit find(Object previous, Object current) {
+            if (visits == null) {
+                return first != null && firstPrevious == previous && first.current == current ? first : null;
+            }
+            for (Visit visit = visits.get(previous); visit != null; visit = visit.next) {
+                if (visit.current == current) {
+                    return visit;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Keeps a change found below a nested object, which its pair may have to replay. Changes of the root
+         * of a diff are not kept, as the root is not reached again
+         */
+        private void log(ChangeType change) {
+            if (size > 1 || size == 1 && frames[0].visit.path != null) {
+                if (log == null) {
+                    log = new ArrayList<>();
+                }
+                log.add(change);
+            }
+        }
+
+        /**
+         * Delivers a change already counted when it was collected
+         */
+        void forward(ChangeType change) {
+            log(change);
+            if (!listener.onChange(change)) {
+                stopped = true;
+            }
+        }
+
+        void accept(ChangeType change) {
+            if (stats != null) {
+                stats.changes++;
+            }
+            log(change);
+            if (!listener.onChange(change)) {
+                stopped = true;
             }
         }
     }
 
     /**
-     * Validates if an item of a list was added or removed
+     * Nested objects to compare and position in their fields, or in the results of their generated differ
      */
-    private void removedOrAdded(Object value1, Object value2, ListUpdate<T> listUpdate, String idName) throws IllegalAccessException {
-        Map<T, Object> value1Map = new HashMap<>();
-        Map<T, Object> value2Map = new HashMap<>();
+    private static final class Frame {
+        private Object previous;
+        private Object current;
+        private PropertyPath path;
+        private FieldPlan[] fields;
+        private List<Object> actions;
+        private int next;
+        private Visit visit;
+
+        private void reset(Object previous, Object current, PropertyPath path) {
+            this.previous = previous;
+            this.current = current;
+            this.path = path;
+            this.fields = null;
+            this.actions = null;
+            this.next = 0;
+        }
+    }
+
+    /**
+     * Pair of objects reached in a traversal: on the stack between its start and its end, then compared, its changes
+     * being the range [from, to) of the log of the sink
+     */
+    private static final class Visit {
+        private final Object current;
+        // Visit of the same previous object with another current object
+        private Visit next;
+        private PropertyPath path;
+        private int from = -1;
+        private int to = -1;
+
+        private Visit(Object current) {
+            this.current = current;
+        }
+
+        boolean isActive() {
+            return from >= 0 && to < 0;
+        }
 
-        buildValueMap(value1Map, idName, value1);
-        buildValueMap(value2Map, idName, value2);
+        boolean isDone() {
+            return to >= 0;
+        }
 
-        Map<T, Object> removedMap = new HashMap<>(value1Map);
-        removedMap.keySet().removeAll(value2Map.keySet());
+        void start(PropertyPath path, int from) {
+            this.path = path;
+            this.from = from;
+            this.to = -1;
+        }
 
-        Map<T, Object> addedMap = new HashMap<>(value2Map);
-        addedMap.keySet().removeAll(value1Map.keySet());
+        void end(int to) {
+            this.to = to;
+        }
+    }
 
-        listUpdate.setRemoved(new ArrayList<T>((Collection<? extends T>) removedMap.values()));
-        listUpdate.setAdded(new ArrayList<T>((Collection<? extends T>) addedMap.values()));
+    /**
+     * Merges three nested objects of the same class. When a side is unchanged, the other one is diffed from the base
+     * into the changes, otherwise the objects are pushed to have their fields merged
+     */
+    private void mergeObjects(Object base, Object left, Object right, PropertyPath path, Merge merge) throws IllegalAccessException {
+        // Both sides may carry the same version with different changes, so they are not compared on their versions
+        if (isUnchanged(base, right, true) || isUnchanged(left, right, false)) {
+            propertyDifference((T) base, (T) left, merge.sink, path);
+        } else if (isUnchanged(base, left, true)) {
+            propertyDifference((T) base, (T) right, merge.sink, path);
+        } else {
+            Triple triple = new Triple(base, left, right, path != null ? path : TypePlan.of(base.getClass(), accessMode).getRootPath());
+            if (merge.visited.add(triple)) {
+                merge.stack.push(triple);
+            }
+        }
     }
 
     /**
-     * Builds a map from each list object
+     * Merges the fields of three nested objects. Their nested objects are pushed in reverse order,
+     * so they are merged in the order of the fields
      */
-    private void buildValueMap(Map<T, Object> valueMap, String idName, Object value) throws IllegalAccessException {
-        for (T innerListField : (List<T>) value) {
-            for (Field f : innerListField.getClass().getDeclaredFields()) {
-                if (idName.equals(f.getName())) {
-                    f.setAccessible(true);
-                    valueMap.put((T) f.get(innerListField), innerListField);
+    private void mergeFields(Triple triple, Merge merge) throws IllegalAccessException {
+        T base = (T) triple.base();
+        T left = (T) triple.left();
+        T right = (T) triple.right();
+        PropertyPath path = triple.path();
+        int size = merge.stack.size();
+        for (FieldPlan field : fieldsAt(TypePlan.of(base.getClass(), accessMode), path)) {
+            if (field.isPrimitive()) {
+                boolean leftChanged = !field.isEqual(base, left);
+                boolean rightChanged = !field.isEqual(base, right);
+                if (leftChanged && rightChanged && !field.isEqual(left, right)) {
+                    merge.conflicts.add(new MergeResult.Conflict(path.child(field.getName()), field.get(base), field.get(left), field.get(right)));
+                } else if (leftChanged) {
+                    emitPropertyUpdate(merge.sink, base, left, path, field.getName());
+                } else if (rightChanged) {
+                    emitPropertyUpdate(merge.sink, base, right, path, field.getName());
+                }
+                continue;
+            }
+            Object value = field.get(base);
+            Object leftValue = field.get(left);
+            Object rightValue = field.get(right);
+            if (value != null && leftValue != null && rightValue != null) {
+                ValueKind kind = ValueKind.of(value);
+                if (kind.isNested() && value.getClass() == leftValue.getClass() && value.getClass() == rightValue.getClass()) {
+                    mergeObjects(value, leftValue, rightValue, path.child(field.getName()), merge);
+                    continue;
                 }
+                if (kind == ValueKind.LIST && leftValue instanceof List<?> && rightValue instanceof List<?>
+                        && mergeLists((List<T>) value, (List<T>) leftValue, (List<T>) rightValue, path.child(field.getName()), merge)) {
+                    continue;
+                }
+            }
+            mergeValues(base, left, right, value, leftValue, rightValue, path, field.getName(), merge);
+        }
+        // The triples pushed by this object are reversed, the first field being on top
+        List<Triple> nested = new ArrayList<>(merge.stack.size() - size);
+        while (merge.stack.size() > size) {
+            nested.add(merge.stack.pop());
+        }
+        for (Triple next : nested) {
+            merge.stack.push(next);
+        }
+    }
+
+    /**
+     * Merges the values of a field that are not merged by parts: each side is diffed from the base,
+     * and the values of both sides are compared when both changed
+     */
+    private void mergeValues(T base, T left, T right, Object value, Object leftValue, Object rightValue, PropertyPath path,
+                             String fieldName, Merge merge) throws IllegalAccessException {
+        List<ChangeType> leftChanges = sideChanges(base, left, value, leftValue, path, fieldName);
+        List<ChangeType> rightChanges = sideChanges(base, right, value, rightValue, path, fieldName);
+        if (rightChanges.isEmpty()) {
+            merge.changes.addAll(leftChanges);
+        } else if (leftChanges.isEmpty()) {
+            merge.changes.addAll(rightChanges);
+        } else if (!differs(left, right, leftValue, rightValue, path, fieldName)) {
+            merge.changes.addAll(leftChanges);
+        } else {
+            merge.conflicts.add(new MergeResult.Conflict(path.child(fieldName), value, leftValue, rightValue));
+        }
+    }
+
+    /**
+     * Changes of the values of a field from one object to another, as found by diff, without the empty listUpdates
+     */
+    private List<ChangeType> sideChanges(T previous, T current, Object value1, Object value2, PropertyPath path, String fieldName) throws IllegalAccessException {
+        List<ChangeType> changes = new ArrayList<>();
+        Sink sink = new Sink(change -> {
+            if (isChange(change)) {
+                changes.add(change);
+            }
+            return true;
+        });
+        compareValues(previous, current, value1, value2, path, fieldName, sink);
+        walk(sink, 0);
+        return changes;
+    }
+
+    /**
+     * Whether the values of a field of both sides differ. Both sides may carry the same version with different changes,
+     * so their nested objects are compared without their versions
+     */
+    private boolean differs(T left, T right, Object leftValue, Object rightValue, PropertyPath path, String fieldName) throws IllegalAccessException {
+        Sink sink = new Sink(null);
+        sink.versions = false;
+        compareValues(left, right, leftValue, rightValue, path, fieldName, sink);
+        walk(sink, 0);
+        return sink.isStopped();
+    }
+
+    /**
+     * Merges three versions of a keyed list item by item. Returns false when the items have no 'id' nor @AuditKey,
+     * the lists being then merged as whole values
+     */
+    private boolean mergeLists(List<T> baseList, List<T> leftList, List<T> rightList, PropertyPath path, Merge merge) throws IllegalAccessException {
+        List<T> sample = !baseList.isEmpty() ? baseList : !leftList.isEmpty() ? leftList : rightList;
+        if (sample.isEmpty()) {
+            return true;
+        }
+        FieldPlan key = keyOf(sample);
+        if (key == null) {
+            return false;
+        }
+        // Duplicated keys keep the last item, as in the join of two lists
+        Map<Object, T> baseItems = itemsByKey(baseList, key);
+        Map<Object, T> leftItems = itemsByKey(leftList, key);
+        Map<Object, T> rightItems = itemsByKey(rightList, key);
+
+        ListUpdate<T> listUpdate = new ListUpdate<>();
+        listUpdate.setProperty(path.getName());
+        listUpdate.path = path;
+        listUpdate.setRemoved(new ArrayList<>());
+        listUpdate.setAdded(new ArrayList<>());
+        List<T> modified = new ArrayList<>();
+        for (Map.Entry<Object, T> entry : baseItems.entrySet()) {
+            T item = entry.getValue();
+            T leftItem = leftItems.get(entry.getKey());
+            T rightItem = rightItems.get(entry.getKey());
+            boolean leftChanged = leftItem != null && isItemChanged(item, leftItem, path, true);
+            boolean rightChanged = rightItem != null && isItemChanged(item, rightItem, path, true);
+            if (leftItem == null || rightItem == null) {
+                // Removed on one side, it stays removed unless the other side changed it
+                if (leftChanged || rightChanged) {
+                    merge.conflicts.add(new MergeResult.Conflict(PropertyPath.item(path, entry.getKey(), null), item, leftItem, rightItem));
+                } else {
+                    listUpdate.getRemoved().add(item);
+                }
+            } else if (leftChanged && rightChanged && isItemChanged(leftItem, rightItem, path, false)) {
+                merge.conflicts.add(new MergeResult.Conflict(PropertyPath.item(path, entry.getKey(), null), item, leftItem, rightItem));
+            } else if (leftChanged || rightChanged) {
+                modified.add(item);
+                modified.add(leftChanged ? leftItem : rightItem);
+            }
+        }
+        for (Map.Entry<Object, T> entry : leftItems.entrySet()) {
+            if (baseItems.containsKey(entry.getKey())) {
+                continue;
+            }
+            T rightItem = rightItems.get(entry.getKey());
+            if (rightItem != null && isItemChanged(entry.getValue(), rightItem, path, false)) {
+                merge.conflicts.add(new MergeResult.Conflict(PropertyPath.item(path, entry.getKey(), null), null, entry.getValue(), rightItem));
+            } else {
+                listUpdate.getAdded().add(entry.getValue());
+            }
+        }
+        for (Map.Entry<Object, T> entry : rightItems.entrySet()) {
+            if (!baseItems.containsKey(entry.getKey()) && !leftItems.containsKey(entry.getKey())) {
+                listUpdate.getAdded().add(entry.getValue());
+            }
+        }
+
+        emitListUpdate(merge.sink, listUpdate);
+        for (int i = 0; i < modified.size(); i += 2) {
+            modifiedListItem(modified.get(i), modified.get(i + 1), key, path, merge.sink);
+        }
+        return true;
+    }
+
+    /**
+     * Items of a keyed list by key, in list order. A duplicated key keeps its last item
+     */
+    private Map<Object, T> itemsByKey(List<T> list, FieldPlan key) throws IllegalAccessException {
+        Map<Object, T> items = new LinkedHashMap<>((int) (list.size() / 0.75f) + 1);
+        for (T item : list) {
+            items.put(key.get(item), item);
+        }
+        return items;
+    }
+
+    /**
+     * Whether a list item has a field compared at the path of the list that differs in the other version of the item
+     */
+    private boolean isItemChanged(T previous, T current, PropertyPath path, boolean versions) throws IllegalAccessException {
+        if (isUnchanged(previous, current, versions) || Objects.equals(previous, current)) {
+            return false;
+        }
+        for (FieldPlan field : fieldsAt(TypePlan.of(current.getClass(), accessMode), path)) {
+            if (!field.isEqual(previous, current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a change holds a change: listUpdates are delivered even when nothing was added nor removed
+     */
+    private static boolean isChange(ChangeType change) {
+        return !(change instanceof ListUpdate<?> listUpdate) || !listUpdate.getAdded().isEmpty() || !listUpdate.getRemoved().isEmpty()
+                || listUpdate.getEdits() != null && !listUpdate.getEdits().isEmpty();
+    }
+
+    /**
+     * State of a three-way diff: the merged changes and conflicts, and the objects left to merge.
+     * Changes of subtrees diffed from the base go through the sink, which leaves out the empty listUpdates
+     */
+    private static final class Merge {
+        private final List<ChangeType> changes = new ArrayList<>();
+        private final List<MergeResult.Conflict> conflicts = new ArrayList<>();
+        private final ArrayDeque<Triple> stack = new ArrayDeque<>();
+        private final Set<Triple> visited = new HashSet<>();
+        private final Sink sink = new Sink(change -> {
+            if (isChange(change)) {
+                changes.add(change);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Three versions of a nested object, compared by identity, and their path
+     */
+    private record Triple(Object base, Object left, Object right, PropertyPath path) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Triple triple && triple.base == base && triple.left == left && triple.right == right;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(base) + System.identityHashCode(left)) + System.identityHashCode(right);
+        }
+    }
+
+    /**
+     * Reports the results of a generated differ to the sink of the traversal.
+     * With a list of actions, nested objects are added to it instead of being pushed
+     */
+    private final class Context implements DiffContext {
+        private final Sink sink;
+        private final List<Object> actions;
+
+        private Context(Sink sink, List<Object> actions) {
+            this.sink = sink;
+            this.actions = actions;
+        }
+
+        @Override
+        public void changed(Object previous, Object current, PropertyPath parent, String fieldName) throws IllegalAccessException {
+            if (!sink.isStopped()) {
+                emitPropertyUpdate(sink, (T) previous, (T) current, parent, fieldName);
+            }
+        }
+
+        @Override
+        public void compare(Object previous, Object current, Object value1, Object value2, PropertyPath parent, String fieldName) throws IllegalAccessException {
+            if (actions != null && value1 != null && value2 != null && value1 != value2 && ValueKind.of(value1).isNested()) {
+                Frame nested = new Frame();
+                nested.reset(value1, value2, parent.child(fieldName));
+                actions.add(nested);
+                return;
             }
+            compareValues((T) previous, (T) current, value1, value2, parent, fieldName, sink);
         }
     }
 }
@@ -0,0 +1,13 @@
+package com.difference;
+
+/**
+ * Compares the fields of two objects of the same type.
+ * Implementations are generated at compile time by {@link AuditDifferProcessor} and picked up by DiffTool
+ */
+public interface Differ<T> {
+
+    /**
+     * Compares every declared field of both objects, reporting the results to the context
+     * */
+    void diff(T previous, T current, PropertyPath parent, DiffContext context) throws IllegalAccessException;
+}
@@ -0,0 +1,40 @@
+package com.difference;
+
+import java.util.Optional;
+
+/**
+ * Lookup of the differs generated by {@link AuditDifferProcessor}, resolved once per class
+ */
+final class Differs {
+
+    static final String SUFFIX = "Differ";
+
+    private static final ClassValue<Optional<Differ<Object>>> DIFFERS = new ClassValue<>() {
+        @Override
+        protected Optional<Differ<Object>> computeValue(Class<?> type) {
+            try {
+                Class<?> differ = Class.forName(differName(type), true, type.getClassLoader());
+                return Optional.of((Differ<Object>) differ.getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private Differs() {
+    }
+
+    /**
+     * Returns the generated differ of the given type or null when there is none
+     */
+    static Differ<Object> of(Class<?> type) {
+        return DIFFERS.get(type).orElse(null);
+    }
+
+    /**
+     * Name of the generated differ: same package, nested names joined with '_'
+     */
+    static String differName(Class<?> type) {
+        return type.getName().replace('$', '_') + SUFFIX;
+    }
+}
@@ -0,0 +1,267 @@
+package com.difference;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Accessible field of an audited type, resolved once when its {@link TypePlan} is built.
+ * Record components are read through their accessor in every access mode. A field that cannot be opened, e.g. in a
+ * module that does not open its package, is read through its public getter
+ */
+final class FieldPlan {
+
+    private static final int OBJECT = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int CHAR = 3;
+    private static final int SHORT = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+
+    private final Field field;
+    private final String name;
+    private final int primitive;
+    private final boolean list;
+    // Whether the field holds an integral number: byte, short, int, long, char or their boxes
+    private final boolean integral;
+    // Getter typed (Object)Object, null when the field is read through reflection
+    private final MethodHandle getter;
+    // Getter typed (Object)<primitive>, only present for primitive fields in METHOD_HANDLE mode
+    private final MethodHandle primitiveGetter;
+
+    /**
+     * Plan of a field, read through the given accessor when it is not null
+     */
+    FieldPlan(Field field, Method accessor, AccessMode accessMode) {
+        this.field = field;
+        this.name = field.getName();
+        this.primitive = primitiveOf(field.getType());
+        this.list = List.class.isAssignableFrom(field.getType());
+        Class<?> type = field.getType();
+        this.integral = (primitive != OBJECT && primitive != BOOLEAN && primitive != FLOAT && primitive != DOUBLE)
+                || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class || type == Character.class;
+
+        MethodHandle handle = accessor == null ? null : unreflect(accessor);
+        boolean open = field.trySetAccessible();
+        if (handle == null && open && accessMode == AccessMode.METHOD_HANDLE) {
+            handle = unreflect(field);
+        }
+        if (handle == null && !open) {
+            Method getter = getterOf(field);
+            handle = getter == null ? null : unreflect(getter);
+            if (handle == null) {
+                throw new AuditException("The field " + name + " of " + field.getDeclaringClass().getName()
+                        + " cannot be read: its package has to be opened or the field needs a public getter");
+            }
+        }
+        this.getter = handle == null ? null : handle.asType(MethodType.methodType(Object.class, Object.class));
+        this.primitiveGetter = handle == null || primitive == OBJECT ? null
+                : handle.asType(MethodType.methodType(field.getType(), Object.class));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isPrimitive() {
+        return primitive != OBJECT;
+    }
+
+    /**
+     * Whether the declared type of the field is a List
+     */
+    boolean isList() {
+        return list;
+    }
+
+    /**
+     * Whether the field holds an integral number, which can be read with {@link #getLong}
+     */
+    boolean isIntegral() {
+        return integral;
+    }
+
+    /**
+     * Reads the integral field of each target into keys, each field once. Returns false when a boxed field is null
+     */
+    boolean getLongs(List<?> targets, long[] keys) throws IllegalAccessException {
+        for (int i = 0; i < keys.length; i++) {
+            if (primitive != OBJECT) {
+                keys[i] = getLong(targets.get(i));
+                continue;
+            }
+            Object value = get(targets.get(i));
+            if (value == null) {
+                return false;
+            }
+            keys[i] = value instanceof Character c ? c : ((Number) value).longValue();
+        }
+        return true;
+    }
+
+    /**
+     * Reads an integral field as a long. Primitive fields are read without boxing, a null boxed field fails
+     */
+    long getLong(Object target) throws IllegalAccessException {
+        if (primitive == OBJECT) {
+            Object value = get(target);
+            return value instanceof Character c ? c : ((Number) value).longValue();
+        }
+        if (primitiveGetter == null) {
+            return primitive == CHAR ? field.getChar(target) : field.getLong(target);
+        }
+        try {
+            MethodHandle h = primitiveGetter;
+            return switch (primitive) {
+                case BYTE -> (byte) h.invokeExact(target);
+                case CHAR -> (char) h.invokeExact(target);
+                case SHORT -> (short) h.invokeExact(target);
+                case INT -> (int) h.invokeExact(target);
+                default -> (long) h.invokeExact(target);
+            };
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AuditException("Unable to read field " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    Object get(Object target) throws IllegalAccessException {
+        if (getter == null) {
+            return field.get(target);
+        }
+        try {
+            return (Object) getter.invokeExact(target);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AuditException("Unable to read field " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the field of a mutable object
+     */
+    void set(Object target, Object value) throws IllegalAccessException {
+        field.set(target, value);
+    }
+
+    /**
+     * Compares the field on both objects. Primitive fields are compared without boxing when
+     * method handles are available, using the same semantics as the boxed equals
+     */
+    boolean isEqual(Object previous, Object current) throws IllegalAccessException {
+        if (primitiveGetter == null) {
+            return Objects.equals(get(previous), get(current));
+        }
+        try {
+            MethodHandle h = primitiveGetter;
+            return switch (primitive) {
+                case BOOLEAN -> (boolean) h.invokeExact(previous) == (boolean) h.invokeExact(current);
+                case BYTE -> (byte) h.invokeExact(previous) == (byte) h.invokeExact(current);
+                case CHAR -> (char) h.invokeExact(previous) == (char) h.invokeExact(current);
+                case SHORT -> (short) h.invokeExact(previous) == (short) h.invokeExact(current);
+                case INT -> (int) h.invokeExact(previous) == (int) h.invokeExact(current);
+                case LONG -> (long) h.invokeExact(previous) == (long) h.invokeExact(current);
+                case FLOAT -> Float.floatToIntBits((float) h.invokeExact(previous))
+                        == Float.floatToIntBits((float) h.invokeExact(current));
+                default -> Double.doubleToLongBits((double) h.invokeExact(previous))
+                        == Double.doubleToLongBits((double) h.invokeExact(current));
+            };
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AuditException("Unable to read field " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Builds a getter taking the target object as only argument, or null when the field
+     * cannot be unreflected and reflection has to be used instead
+     */
+    private static MethodHandle unreflect(Field field) {
+        try {
+            MethodHandle handle = lookupOf(field.getDeclaringClass()).unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle;
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Handle of an accessor or getter method, or null when it cannot be called from here
+     */
+    private static MethodHandle unreflect(Method method) {
+        try {
+            MethodHandle handle = lookupOf(method.getDeclaringClass()).unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle;
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lookup with private access to the type when its package is open to this library, public access otherwise
+     */
+    static MethodHandles.Lookup lookupOf(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException | RuntimeException e) {
+            return MethodHandles.publicLookup();
+        }
+    }
+
+    /**
+     * Public 'getName' or 'isName' method of a field, null when there is none
+     */
+    private static Method getterOf(Field field) {
+        String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method method = field.getDeclaringClass().getMethod(prefix + suffix);
+                if (method.getReturnType() == field.getType() && Modifier.isStatic(method.getModifiers()) == Modifier.isStatic(field.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                // Next prefix
+            }
+        }
+        return null;
+    }
+
+    private static int primitiveOf(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return OBJECT;
+        }
+        if (type == boolean.class) {
+            return BOOLEAN;
+        } else if (type == byte.class) {
+            return BYTE;
+        } else if (type == char.class) {
+            return CHAR;
+        } else if (type == short.class) {
+            return SHORT;
+        } else if (type == int.class) {
+            return INT;
+        } else if (type == long.class) {
+            return LONG;
+        } else if (type == float.class) {
+            return FLOAT;
+        }
+        return DOUBLE;
+    }
+}
@@ -0,0 +1,14 @@
+package com.difference;
+
+/**
+ * Implemented by objects that keep a structural fingerprint of their audited state, e.g. computed once by an
+ * immutable object or recomputed when its version changes. When DiffConfig.setFingerprints(true) is set,
+ * two objects of the same class with the same fingerprint are considered unchanged and their fields are not compared
+ */
+public interface Fingerprinted {
+
+    /**
+     * Hash of the audited state of this object and of everything it holds, see {@link Fingerprints#of(Object)}
+     */
+    long auditFingerprint();
+}
@@ -0,0 +1,95 @@
+package com.difference;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merkle style fingerprint of an object graph: the hash of an object combines the hashes of its fields,
+ * and a nested {@link Fingerprinted} object contributes its own fingerprint instead of being traversed.
+ * An object caching its fingerprint therefore makes the fingerprint of its parents cost one step per field.
+ * Lists and arrays are hashed in order, maps and sets regardless of order.
+ * Equal fingerprints are only a strong hint of equal state: a collision hides the changes of the branch
+ */
+public final class Fingerprints {
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Computes the fingerprint of the fields of the given object, even when it is Fingerprinted itself,
+     * so it can be called from {@link Fingerprinted#auditFingerprint()}. Object graphs must not hold cycles
+     */
+    public static long of(Object value) {
+        if (value == null || !ValueKind.of(value).isNested()) {
+            return hash(value);
+        }
+        long h = mix(value.getClass().getName().hashCode());
+        try {
+            for (FieldPlan field : TypePlan.of(value.getClass(), AccessMode.REFLECTION).getFields()) {
+                h = combine(h, hash(field.get(value)));
+            }
+        } catch (IllegalAccessException e) {
+            throw new AuditException("Unable to compute the fingerprint of " + value.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+        return h;
+    }
+
+    private static long hash(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Fingerprinted fingerprinted) {
+            return fingerprinted.auditFingerprint();
+        }
+        long h = mix(value.getClass().getName().hashCode());
+        switch (ValueKind.of(value)) {
+            case LIST -> {
+                for (Object item : (List<?>) value) {
+                    h = combine(h, hash(item));
+                }
+            }
+            case SET -> h = combine(h, unordered((Collection<?>) value));
+            case MAP -> {
+                long sum = 0;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    sum += combine(hash(entry.getKey()), hash(entry.getValue()));
+                }
+                h = combine(h, sum);
+            }
+            case ARRAY -> {
+                for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                    h = combine(h, hash(Array.get(value, i)));
+                }
+            }
+            case RECORD, BEAN -> h = of(value);
+            default -> h = combine(h, value.hashCode());
+        }
+        return h;
+    }
+
+    private static long unordered(Collection<?> values) {
+        long sum = 0;
+        for (Object value : values) {
+            sum += hash(value);
+        }
+        return sum;
+    }
+
+    private static long combine(long h, long value) {
+        return mix(h * 31 + value);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreading every input bit over the 64 bits
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e94d3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
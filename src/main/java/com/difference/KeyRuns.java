@@ -0,0 +1,273 @@
+package com.difference;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keys of the items of a list sorted on disk, for lists too large to be indexed in memory.
+ * The (key, position) entries are sorted in memory by runs of a bounded number of items, each run being written
+ * to its own region of a temporary file, then the runs are read back merged in (key, position) order.
+ * The heap only holds one run while sorting and one small read buffer per run while merging, and the file is read
+ * through one channel whatever the number of runs. The file is deleted on close
+ */
+final class KeyRuns implements Closeable {
+
+    private static final int ENTRY = 12;
+    // Size of the read buffer of a run, a whole number of entries
+    private static final int READ_BUFFER = 682 * ENTRY;
+
+    /**
+     * Sort key of the item at a position of the list
+     */
+    @FunctionalInterface
+    interface Keys {
+        long keyAt(int position) throws IllegalAccessException;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    // Read buffer of each run, then the position of its next unread bytes in the file and the end of the run
+    private final ByteBuffer[] runs;
+    private final long[] offsets;
+    private final long[] ends;
+    // Binary heap of the runs ordered by their current entry
+    private final int[] heap;
+    private final long[] heads;
+    private final int[] positions;
+    private int size;
+    private long key;
+    private int position;
+
+    private KeyRuns(Path file, FileChannel channel, long[] ends) {
+        this.file = file;
+        this.channel = channel;
+        this.runs = new ByteBuffer[ends.length];
+        this.offsets = new long[ends.length];
+        this.ends = ends;
+        this.heap = new int[ends.length];
+        this.heads = new long[ends.length];
+        this.positions = new int[ends.length];
+        for (int run = 0; run < ends.length; run++) {
+            offsets[run] = run == 0 ? 0 : ends[run - 1];
+            runs[run] = ByteBuffer.allocate((int) Math.min(READ_BUFFER, ends[run] - offsets[run])).limit(0);
+            if (read(run)) {
+                heap[size] = run;
+                up(size++);
+            }
+        }
+    }
+
+    /**
+     * Sorts the keys of the positions [0, count) of a list in runs of at most runSize entries
+     */
+    static KeyRuns sort(Path directory, int count, int runSize, Keys keys) throws IllegalAccessException {
+        Path file = null;
+        FileChannel channel = null;
+        try {
+            file = Files.createTempFile(directory, "diff-keys", ".run");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long[] ends = new long[(count + runSize - 1) / runSize];
+            long[] runKeys = new long[Math.min(count, runSize)];
+            int[] runPositions = new int[runKeys.length];
+            ByteBuffer buffer = ByteBuffer.allocate(runKeys.length * ENTRY);
+            for (int run = 0; run < ends.length; run++) {
+                int from = run * runSize;
+                int length = Math.min(runSize, count - from);
+                for (int i = 0; i < length; i++) {
+                    runKeys[i] = keys.keyAt(from + i);
+                    runPositions[i] = from + i;
+                }
+                sort(runKeys, runPositions, 0, length - 1);
+                buffer.clear();
+                for (int i = 0; i < length; i++) {
+                    buffer.putLong(runKeys[i]).putInt(runPositions[i]);
+                }
+                buffer.flip();
+                long offset = (long) from * ENTRY;
+                while (buffer.hasRemaining()) {
+                    offset += channel.write(buffer, offset);
+                }
+                ends[run] = offset;
+            }
+            return new KeyRuns(file, channel, ends);
+        } catch (IOException e) {
+            close(channel, file);
+            throw new AuditException("Unable to spill the list keys to disk: " + e.getMessage(), e);
+        } catch (IllegalAccessException | RuntimeException e) {
+            close(channel, file);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether an entry is left. The key and position of the current entry are then the next ones in (key, position) order
+     */
+    boolean hasNext() {
+        return size > 0;
+    }
+
+    void next() {
+        int run = heap[0];
+        key = heads[run];
+        position = positions[run];
+        if (read(run)) {
+            down(0);
+        } else {
+            heap[0] = heap[--size];
+            down(0);
+        }
+    }
+
+    /**
+     * Key of the next entry, without moving to it
+     */
+    long peekKey() {
+        return heads[heap[0]];
+    }
+
+    long key() {
+        return key;
+    }
+
+    int position() {
+        return position;
+    }
+
+    @Override
+    public void close() {
+        close(channel, file);
+    }
+
+    /**
+     * Moves a run to its next entry, filling its buffer from the file once it is read. Returns false at the end of the run
+     */
+    private boolean read(int run) {
+        ByteBuffer buffer = runs[run];
+        if (!buffer.hasRemaining()) {
+            if (offsets[run] == ends[run]) {
+                return false;
+            }
+            buffer.clear().limit((int) Math.min(buffer.capacity(), ends[run] - offsets[run]));
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offsets[run] + buffer.position()) < 0) {
+                        throw new EOFException("The spill file " + file + " was truncated");
+                    }
+                }
+            } catch (IOException e) {
+                throw new AuditException("Unable to read the list keys spilled to disk: " + e.getMessage(), e);
+            }
+            offsets[run] += buffer.limit();
+            buffer.flip();
+        }
+        heads[run] = buffer.getLong();
+        positions[run] = buffer.getInt();
+        return true;
+    }
+
+    private boolean before(int run, int other) {
+        return heads[run] < heads[other] || heads[run] == heads[other] && positions[run] < positions[other];
+    }
+
+    private void up(int index) {
+        int run = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(run, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = run;
+    }
+
+    private void down(int index) {
+        int run = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], run)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = run;
+    }
+
+    /**
+     * Quicksort of the range [low, high] by (key, position). Every entry has its own position, so no two entries are equal.
+     * The smaller side is sorted recursively and the larger one in the loop, which bounds the depth
+     */
+    private static void sort(long[] keys, int[] positions, int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            int pivotPosition = positions[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivotKey || keys[i] == pivotKey && positions[i] < pivotPosition) {
+                    i++;
+                }
+                while (keys[j] > pivotKey || keys[j] == pivotKey && positions[j] > pivotPosition) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, positions, i++, j--);
+                }
+            }
+            if (j - low < high - i) {
+                sort(keys, positions, low, j);
+                low = i;
+            } else {
+                sort(keys, positions, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && (keys[j] < keys[j - 1] || keys[j] == keys[j - 1] && positions[j] < positions[j - 1]); j--) {
+                swap(keys, positions, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(long[] keys, int[] positions, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int position = positions[i];
+        positions[i] = positions[j];
+        positions[j] = position;
+    }
+
+    private static void close(FileChannel channel, Path file) {
+        // The file is in a temporary directory, a failed close or delete only leaves it there
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // The file is still deleted below
+        }
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // Left in the temporary directory
+        }
+    }
+}
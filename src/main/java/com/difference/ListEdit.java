@@ -0,0 +1,59 @@
+package com.difference;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Range of items inserted, deleted or moved inside a list compared by position
+ */
+public class ListEdit<T> implements Serializable {
+
+    public enum Type {
+        INSERT,
+        DELETE,
+        MOVE
+    }
+
+    Type type;
+    int previousIndex;
+    int currentIndex;
+    List<T> items;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Index of the first item in the previous list. For an insert, the position in the previous list where the items were inserted
+     */
+    public int getPreviousIndex() {
+        return previousIndex;
+    }
+
+    public void setPreviousIndex(int previousIndex) {
+        this.previousIndex = previousIndex;
+    }
+
+    /**
+     * Index of the first item in the current list. For a delete, the position in the current list where the items were
+     */
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    public void setCurrentIndex(int currentIndex) {
+        this.currentIndex = currentIndex;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,38 @@
+package com.difference;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the comparison of one list, disabled unless a recording enables 'com.difference.ListJoin'
+ */
+@Name("com.difference.ListJoin")
+@Label("List Join")
+@Category("Difference")
+@Description("Comparison of the previous and current versions of a list")
+@StackTrace(false)
+final class ListJoinEvent extends Event {
+
+    @Label("Property")
+    String property;
+
+    @Label("Previous Size")
+    int previousSize;
+
+    @Label("Current Size")
+    int currentSize;
+
+    @Label("Added")
+    int added;
+
+    @Label("Removed")
+    int removed;
+
+    @Label("Spilled")
+    @Description("Whether the list was joined on disk, its added and removed items are then not counted")
+    boolean spilled;
+}
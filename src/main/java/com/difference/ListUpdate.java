@@ -6,6 +6,7 @@ import java.util.List;
 public final class ListUpdate<T> extends ChangeType {
     List<T> added;
     List<T> removed;
+    List<ListEdit<T>> edits;
 
     public List<T> getAdded() {
         return added;
@@ -22,4 +23,15 @@ public final class ListUpdate<T> extends ChangeType {
     public void setRemoved(List<T> removed) {
         this.removed = removed;
     }
+
+    /**
+     * Insert/delete/move ranges, only present when the list was compared by position
+     */
+    public List<ListEdit<T>> getEdits() {
+        return edits;
+    }
+
+    public void setEdits(List<ListEdit<T>> edits) {
+        this.edits = edits;
+    }
 }
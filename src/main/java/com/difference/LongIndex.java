@@ -0,0 +1,49 @@
+package com.difference;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from a long key to the index of an item, used to join keyed lists on integral keys
+ * without boxing them. Slots are probed linearly in a table kept at most half full. Putting a key again replaces its index
+ */
+final class LongIndex {
+
+    private static final int ABSENT = -1;
+
+    private final long[] keys;
+    private final int[] indexes;
+    private final int mask;
+
+    LongIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.indexes = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(indexes, ABSENT);
+    }
+
+    void put(long key, int index) {
+        int slot = slot(key);
+        indexes[slot] = index;
+        keys[slot] = key;
+    }
+
+    /**
+     * Index of the key, or -1 when it is absent
+     */
+    int get(long key) {
+        return indexes[slot(key)];
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it would be put
+     */
+    private int slot(long key) {
+        // Consecutive keys are spread over the table by the MurmurHash3 finalizer
+        int slot = (int) Fingerprints.mix(key) & mask;
+        while (indexes[slot] != ABSENT && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,28 @@
+package com.difference;
+
+import java.util.Map;
+
+/**
+ * Change of a map property: entries whose key was added or removed.
+ * Entries whose value changed are reported as PropertyUpdates with the key in their path
+ */
+public final class MapUpdate<K, V> extends ChangeType {
+    Map<K, V> added;
+    Map<K, V> removed;
+
+    public Map<K, V> getAdded() {
+        return added;
+    }
+
+    public void setAdded(Map<K, V> added) {
+        this.added = added;
+    }
+
+    public Map<K, V> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(Map<K, V> removed) {
+        this.removed = removed;
+    }
+}
@@ -0,0 +1,43 @@
+package com.difference;
+
+import java.util.List;
+
+/**
+ * Result of a three-way diff (DiffTool.merge): the changes made on one side only, or made the same way on both sides,
+ * which turn the base into the merged state, and the conflicts, where both sides changed the same property or the same
+ * list item ('id' or @AuditKey value) differently. Changes hold the base as previous state and the side they come from
+ * as current state, so a patch built from them and applied to the base merges both sides
+ */
+public final class MergeResult {
+
+    /**
+     * Property or list item changed differently on both sides. The values are the ones of the property, or the items
+     * of the list, null when the item is absent from a side
+     */
+    public record Conflict(PropertyPath path, Object base, Object left, Object right) {
+
+        public String getProperty() {
+            return path.toString();
+        }
+    }
+
+    private final List<ChangeType> changes;
+    private final List<Conflict> conflicts;
+
+    MergeResult(List<ChangeType> changes, List<Conflict> conflicts) {
+        this.changes = changes;
+        this.conflicts = conflicts;
+    }
+
+    public List<ChangeType> getChanges() {
+        return changes;
+    }
+
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    public boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+}
@@ -0,0 +1,298 @@
+package com.difference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Positional diff of two lists with the linear space variant of Myers' O(ND) algorithm:
+ * the middle snake of the edit graph is searched from both ends and both halves are solved recursively,
+ * so only two vectors of O(D) entries are kept. The common prefix and suffix are skipped first.
+ * When a sub-problem needs more than maxCost edits it is reported as delete/insert of the whole range,
+ * which keeps the time bounded on very different lists. Deleted items that are inserted again are reported as moves.
+ */
+final class MyersDiff<T> {
+
+    private final List<T> a;
+    private final List<T> b;
+    private final int maxCost;
+
+    private int[] vf;
+    private int[] vb;
+    private int offset;
+    private final int[] snake = new int[4];
+
+    // Deleted ranges: start in a, length, position in b
+    private int[] deletes = new int[24];
+    private int deleteCount;
+    // Inserted ranges: start in b, length, position in a
+    private int[] inserts = new int[24];
+    private int insertCount;
+
+    private MyersDiff(List<T> a, List<T> b, int maxCost) {
+        this.a = a instanceof RandomAccess ? a : new ArrayList<>(a);
+        this.b = b instanceof RandomAccess ? b : new ArrayList<>(b);
+        this.maxCost = Math.max(1, maxCost);
+    }
+
+    /**
+     * Returns the deletes, then the inserts, then the moves turning the previous list into the current one
+     */
+    static <T> List<ListEdit<T>> diff(List<T> previous, List<T> current, int maxCost) {
+        MyersDiff<T> diff = new MyersDiff<>(previous, current, maxCost);
+        diff.compute();
+        return diff.edits();
+    }
+
+    private void compute() {
+        int left = 0;
+        int top = 0;
+        int right = a.size();
+        int bottom = b.size();
+        while (left < right && top < bottom && equal(left, top)) {
+            left++;
+            top++;
+        }
+        while (right > left && bottom > top && equal(right - 1, bottom - 1)) {
+            right--;
+            bottom--;
+        }
+
+        int maxD = Math.min((right - left + bottom - top + 1) / 2, maxCost);
+        offset = maxD + 1;
+        vf = new int[2 * maxD + 3];
+        vb = new int[2 * maxD + 3];
+        findPath(left, top, right, bottom);
+    }
+
+    private void findPath(int left, int top, int right, int bottom) {
+        int width = right - left;
+        int height = bottom - top;
+        if (width == 0) {
+            insert(top, height, left);
+            return;
+        }
+        if (height == 0) {
+            delete(left, width, top);
+            return;
+        }
+        if (!midpoint(left, top, right, bottom)) {
+            delete(left, width, top);
+            insert(top, height, right);
+            return;
+        }
+        int startX = snake[0];
+        int startY = snake[1];
+        int finishX = snake[2];
+        int finishY = snake[3];
+        findPath(left, top, startX, startY);
+        walk(startX, startY, finishX, finishY);
+        findPath(finishX, finishY, right, bottom);
+    }
+
+    /**
+     * Finds the middle snake of the box and stores it in snake. Returns false when it costs more than maxCost edits
+     */
+    private boolean midpoint(int left, int top, int right, int bottom) {
+        int width = right - left;
+        int height = bottom - top;
+        int delta = width - height;
+        boolean odd = (delta & 1) != 0;
+        int max = Math.min((width + height + 1) / 2, maxCost);
+        vf[offset + 1] = left;
+        vb[offset + 1] = bottom;
+
+        for (int d = 0; d <= max; d++) {
+            // Forward search from the top left corner
+            for (int k = d; k >= -d; k -= 2) {
+                int c = k - delta;
+                int x;
+                int px;
+                if (k == -d || (k != d && vf[offset + k - 1] < vf[offset + k + 1])) {
+                    px = x = vf[offset + k + 1];
+                } else {
+                    px = vf[offset + k - 1];
+                    x = px + 1;
+                }
+                int y = top + (x - left) - k;
+                int py = (d == 0 || x != px) ? y : y - 1;
+                while (x < right && y < bottom && equal(x, y)) {
+                    x++;
+                    y++;
+                }
+                vf[offset + k] = x;
+                if (odd && c >= -(d - 1) && c <= d - 1 && y >= vb[offset + c]) {
+                    setSnake(px, py, x, y);
+                    return true;
+                }
+            }
+            // Backward search from the bottom right corner
+            for (int c = d; c >= -d; c -= 2) {
+                int k = c + delta;
+                int y;
+                int py;
+                if (c == -d || (c != d && vb[offset + c - 1] > vb[offset + c + 1])) {
+                    py = y = vb[offset + c + 1];
+                } else {
+                    py = vb[offset + c - 1];
+                    y = py - 1;
+                }
+                int x = left + (y - top) + k;
+                int px = (d == 0 || y != py) ? x : x + 1;
+                while (x > left && y > top && equal(x - 1, y - 1)) {
+                    x--;
+                    y--;
+                }
+                vb[offset + c] = y;
+                if (!odd && k >= -d && k <= d && x <= vf[offset + k]) {
+                    setSnake(x, y, px, py);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void setSnake(int startX, int startY, int finishX, int finishY) {
+        snake[0] = startX;
+        snake[1] = startY;
+        snake[2] = finishX;
+        snake[3] = finishY;
+    }
+
+    /**
+     * Walks a snake: diagonal, at most one insert or delete, diagonal
+     */
+    private void walk(int x1, int y1, int x2, int y2) {
+        while (x1 < x2 && y1 < y2 && equal(x1, y1)) {
+            x1++;
+            y1++;
+        }
+        int dx = x2 - x1;
+        int dy = y2 - y1;
+        if (dx < dy) {
+            insert(y1, 1, x1);
+        } else if (dx > dy) {
+            delete(x1, 1, y1);
+        }
+    }
+
+    private boolean equal(int x, int y) {
+        return Objects.equals(a.get(x), b.get(y));
+    }
+
+    private void delete(int start, int length, int position) {
+        if (length == 0) {
+            return;
+        }
+        int last = (deleteCount - 1) * 3;
+        if (deleteCount > 0 && deletes[last] + deletes[last + 1] == start && deletes[last + 2] == position) {
+            deletes[last + 1] += length;
+            return;
+        }
+        if ((deleteCount + 1) * 3 > deletes.length) {
+            deletes = Arrays.copyOf(deletes, deletes.length * 2);
+        }
+        deletes[deleteCount * 3] = start;
+        deletes[deleteCount * 3 + 1] = length;
+        deletes[deleteCount * 3 + 2] = position;
+        deleteCount++;
+    }
+
+    private void insert(int start, int length, int position) {
+        if (length == 0) {
+            return;
+        }
+        int last = (insertCount - 1) * 3;
+        if (insertCount > 0 && inserts[last] + inserts[last + 1] == start && inserts[last + 2] == position) {
+            inserts[last + 1] += length;
+            return;
+        }
+        if ((insertCount + 1) * 3 > inserts.length) {
+            inserts = Arrays.copyOf(inserts, inserts.length * 2);
+        }
+        inserts[insertCount * 3] = start;
+        inserts[insertCount * 3 + 1] = length;
+        inserts[insertCount * 3 + 2] = position;
+        insertCount++;
+    }
+
+    /**
+     * Pairs deleted and inserted items that are equal as moves and builds the edits from the remaining ranges
+     */
+    private List<ListEdit<T>> edits() {
+        Map<Object, ArrayDeque<Integer>> deletedItems = new HashMap<>();
+        for (int r = 0; r < deleteCount; r++) {
+            for (int i = deletes[r * 3], end = i + deletes[r * 3 + 1]; i < end; i++) {
+                deletedItems.computeIfAbsent(a.get(i), item -> new ArrayDeque<>()).add(i);
+            }
+        }
+
+        BitSet movedFrom = new BitSet(a.size());
+        BitSet movedTo = new BitSet(b.size());
+        List<ListEdit<T>> moves = new ArrayList<>();
+        ListEdit<T> move = null;
+        for (int r = 0; r < insertCount && !deletedItems.isEmpty(); r++) {
+            for (int j = inserts[r * 3], end = j + inserts[r * 3 + 1]; j < end; j++) {
+                ArrayDeque<Integer> candidates = deletedItems.get(b.get(j));
+                if (candidates == null) {
+                    continue;
+                }
+                int i = candidates.poll();
+                if (candidates.isEmpty()) {
+                    deletedItems.remove(b.get(j));
+                }
+                movedFrom.set(i);
+                movedTo.set(j);
+                if (move != null && move.getPreviousIndex() + move.getItems().size() == i
+                        && move.getCurrentIndex() + move.getItems().size() == j) {
+                    move.getItems().add(b.get(j));
+                } else {
+                    move = edit(ListEdit.Type.MOVE, i, j, new ArrayList<>(List.of(b.get(j))));
+                    moves.add(move);
+                }
+            }
+        }
+
+        List<ListEdit<T>> edits = new ArrayList<>();
+        for (int r = 0; r < deleteCount; r++) {
+            int start = deletes[r * 3];
+            int end = start + deletes[r * 3 + 1];
+            int position = deletes[r * 3 + 2];
+            for (int i = movedFrom.nextClearBit(start); i < end; ) {
+                int next = movedFrom.nextSetBit(i);
+                int stop = next < 0 || next > end ? end : next;
+                edits.add(edit(ListEdit.Type.DELETE, i, position, new ArrayList<>(a.subList(i, stop))));
+                i = movedFrom.nextClearBit(stop);
+            }
+        }
+        for (int r = 0; r < insertCount; r++) {
+            int start = inserts[r * 3];
+            int end = start + inserts[r * 3 + 1];
+            int position = inserts[r * 3 + 2];
+            for (int j = movedTo.nextClearBit(start); j < end; ) {
+                int next = movedTo.nextSetBit(j);
+                int stop = next < 0 || next > end ? end : next;
+                edits.add(edit(ListEdit.Type.INSERT, position, j, new ArrayList<>(b.subList(j, stop))));
+                j = movedTo.nextClearBit(stop);
+            }
+        }
+        edits.addAll(moves);
+        return edits;
+    }
+
+    private static <T> ListEdit<T> edit(ListEdit.Type type, int previousIndex, int currentIndex, List<T> items) {
+        ListEdit<T> edit = new ListEdit<>();
+        edit.setType(type);
+        edit.setPreviousIndex(previousIndex);
+        edit.setCurrentIndex(currentIndex);
+        edit.setItems(items);
+        return edit;
+    }
+}
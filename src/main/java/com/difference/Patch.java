@@ -0,0 +1,54 @@
+package com.difference;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Changes between two states of an object, reduced to the operations that replay them on the previous state:
+ * new values of the modified fields, items added to or removed from collections (by 'id' or @AuditKey value),
+ * modified fields of list items, map entries, array ranges and edits of the lists compared by position.
+ * A patch is Serializable as long as the values it holds are
+ */
+public final class Patch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+        /** Sets the field at the path to the value */
+        SET,
+        /** Adds the value to the collection at the path */
+        ADD,
+        /** Removes the item of the key from the list at the path, or the value when the items have no key */
+        REMOVE,
+        /** Sets the field named by the last name of the path to the value, in the item of the key of the list */
+        ITEM,
+        /** Puts the key and value in the map at the path */
+        PUT,
+        /** Removes the key from the map at the path */
+        DELETE,
+        /** Replaces the range [key[0], key[1]) of the array at the path by the value, an array of the same type */
+        SPLICE,
+        /** Applies the value, a list of ListEdits, to the list at the path */
+        EDITS
+    }
+
+    /**
+     * Operation of a patch. The path holds the field names from the root object, without its type
+     */
+    public record Operation(Kind kind, String[] path, Object key, Object value) implements Serializable {
+    }
+
+    private final List<Operation> operations;
+
+    Patch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+}
@@ -0,0 +1,366 @@
+package com.difference;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Builds the {@link Patch} of the changes found by a diff and applies patches.
+ * Objects on the path of an operation are updated in place, except records which are copied through their canonical
+ * constructor. Collections, maps and arrays are always copied, so a target holding immutable collections can be patched.
+ * The operations of a collection follow each other in a patch, they are applied to a single copy of it
+ */
+final class Patcher {
+
+    private static final ClassValue<RecordCopier> COPIERS = new ClassValue<>() {
+        @Override
+        protected RecordCopier computeValue(Class<?> type) {
+            return RecordCopier.of(type);
+        }
+    };
+
+    private final AccessMode accessMode;
+    // Names of the interned paths already converted, operations on the same property share their array
+    private final Map<PropertyPath, String[]> names = new IdentityHashMap<>();
+
+    Patcher(AccessMode accessMode) {
+        this.accessMode = accessMode;
+    }
+
+    /**
+     * Converts changes found by a DiffTool. Changes without a path, e.g. read back from an AuditLog, cannot be converted
+     */
+    Patch build(Collection<? extends ChangeType> changes) throws IllegalAccessException {
+        List<Patch.Operation> operations = new ArrayList<>();
+        for (ChangeType change : changes) {
+            PropertyPath path = change.getPath();
+            if (path == null) {
+                throw new AuditException("The change of " + change.getProperty() + " has no path, it cannot be turned into a patch");
+            }
+            if (change instanceof PropertyUpdate<?> propertyUpdate) {
+                // Property updates hold the objects owning the field, except for map entries which hold the values
+                if (path.isItem() && path.getItemField() == null) {
+                    operations.add(new Patch.Operation(Patch.Kind.PUT, namesOf(path.getParent()), path.getKey(), propertyUpdate.getCurrent()));
+                } else if (path.isItem()) {
+                    String[] list = namesOf(path.getParent());
+                    String[] itemPath = Arrays.copyOf(list, list.length + 1);
+                    itemPath[list.length] = path.getItemField();
+                    operations.add(new Patch.Operation(Patch.Kind.ITEM, itemPath, path.getKey(),
+                            read(propertyUpdate.getCurrent(), path.getItemField())));
+                } else {
+                    operations.add(new Patch.Operation(Patch.Kind.SET, namesOf(path), null, read(propertyUpdate.getCurrent(), path.getName())));
+                }
+            } else if (change instanceof ListUpdate<?> listUpdate) {
+                String[] list = namesOf(path);
+                if (listUpdate.getEdits() != null) {
+                    if (!listUpdate.getEdits().isEmpty()) {
+                        operations.add(new Patch.Operation(Patch.Kind.EDITS, list, null, listUpdate.getEdits()));
+                    }
+                    continue;
+                }
+                for (Object item : listUpdate.getRemoved()) {
+                    FieldPlan key = keyOf(item);
+                    operations.add(key == null ? new Patch.Operation(Patch.Kind.REMOVE, list, null, item)
+                            : new Patch.Operation(Patch.Kind.REMOVE, list, key.get(item), null));
+                }
+                for (Object item : listUpdate.getAdded()) {
+                    operations.add(new Patch.Operation(Patch.Kind.ADD, list, null, item));
+                }
+            } else if (change instanceof MapUpdate<?, ?> mapUpdate) {
+                String[] map = namesOf(path);
+                for (Object key : mapUpdate.getRemoved().keySet()) {
+                    operations.add(new Patch.Operation(Patch.Kind.DELETE, map, key, null));
+                }
+                for (Map.Entry<?, ?> entry : mapUpdate.getAdded().entrySet()) {
+                    operations.add(new Patch.Operation(Patch.Kind.PUT, map, entry.getKey(), entry.getValue()));
+                }
+            } else {
+                ArrayUpdate arrayUpdate = (ArrayUpdate) change;
+                Object slice = ArrayDiff.slice(arrayUpdate.getCurrent(), arrayUpdate.getFromIndex(), arrayUpdate.getCurrentToIndex());
+                operations.add(new Patch.Operation(Patch.Kind.SPLICE, namesOf(path),
+                        new int[]{arrayUpdate.getFromIndex(), arrayUpdate.getPreviousToIndex()}, slice));
+            }
+        }
+        return new Patch(operations);
+    }
+
+    /**
+     * Field names of an interned path, from the root object
+     */
+    private String[] namesOf(PropertyPath path) {
+        String[] known = names.get(path);
+        if (known != null) {
+            return known;
+        }
+        List<String> list = new ArrayList<>();
+        for (PropertyPath node = path; node.getParent() != null; node = node.getParent()) {
+            list.add(0, node.getName());
+        }
+        String[] array = list.toArray(new String[0]);
+        names.put(path, array);
+        return array;
+    }
+
+    private Object read(Object owner, String fieldName) throws IllegalAccessException {
+        return fieldOf(owner, fieldName).get(owner);
+    }
+
+    private FieldPlan fieldOf(Object owner, String fieldName) {
+        FieldPlan field = TypePlan.of(owner.getClass(), accessMode).getField(fieldName);
+        if (field == null) {
+            throw new AuditException("The patch does not match the type " + owner.getClass().getName() + ": it has no field " + fieldName);
+        }
+        return field;
+    }
+
+    private FieldPlan keyOf(Object item) {
+        return item == null || !ValueKind.of(item).isNested() ? null : TypePlan.of(item.getClass(), accessMode).getKey();
+    }
+
+    /**
+     * Applies the operations in order and returns the patched target, a copy when the target is a record
+     */
+    Object apply(Patch patch, Object target) throws IllegalAccessException {
+        List<Patch.Operation> operations = patch.getOperations();
+        Object result = target;
+        for (int i = 0; i < operations.size(); ) {
+            Patch.Operation operation = operations.get(i);
+            if (operation.kind() == Patch.Kind.SET) {
+                result = update(result, operation.path(), 0, operation.path().length, value -> operation.value());
+                i++;
+                continue;
+            }
+            int length = collectionLength(operation);
+            int end = i + 1;
+            while (end < operations.size() && operations.get(end).kind() != Patch.Kind.SET
+                    && collectionLength(operations.get(end)) == length
+                    && Arrays.equals(operations.get(end).path(), 0, length, operation.path(), 0, length)) {
+                end++;
+            }
+            List<Patch.Operation> group = operations.subList(i, end);
+            result = update(result, operation.path(), 0, length, value -> applyAll(value, group, operation.path(), length));
+            i = end;
+        }
+        return result;
+    }
+
+    /**
+     * Length of the path of the collection an operation applies to. The path of an item operation ends with the item field
+     */
+    private static int collectionLength(Patch.Operation operation) {
+        return operation.kind() == Patch.Kind.ITEM ? operation.path().length - 1 : operation.path().length;
+    }
+
+    /**
+     * Replaces the value at the end of the path with the updated one, copying the records holding it
+     */
+    private Object update(Object owner, String[] path, int depth, int length, Update update) throws IllegalAccessException {
+        if (owner == null) {
+            throw new AuditException("The patch cannot be applied: " + String.join(".", Arrays.copyOf(path, depth)) + " is null");
+        }
+        FieldPlan field = fieldOf(owner, path[depth]);
+        Object value = field.get(owner);
+        Object updated = depth == length - 1 ? update.apply(value) : update(value, path, depth + 1, length, update);
+        if (updated == value) {
+            return owner;
+        }
+        if (owner instanceof Record) {
+            return COPIERS.get(owner.getClass()).copy(owner, field.getName(), updated);
+        }
+        field.set(owner, updated);
+        return owner;
+    }
+
+    private Object applyAll(Object value, List<Patch.Operation> group, String[] path, int length) throws IllegalAccessException {
+        if (value == null) {
+            throw new AuditException("The patch cannot be applied: " + String.join(".", Arrays.copyOf(path, length)) + " is null");
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>(map);
+            for (Patch.Operation operation : group) {
+                if (operation.kind() == Patch.Kind.DELETE) {
+                    copy.remove(operation.key());
+                } else {
+                    copy.put(operation.key(), operation.value());
+                }
+            }
+            return copy;
+        }
+        if (value.getClass().isArray()) {
+            for (Patch.Operation operation : group) {
+                value = splice(value, (int[]) operation.key(), operation.value());
+            }
+            return value;
+        }
+
+        Collection<Object> copy = value instanceof Set<?> set ? new LinkedHashSet<>(set) : new ArrayList<>((Collection<?>) value);
+        // Index of the keyed items of the copy, built for the first item operation
+        Map<Object, Integer> index = null;
+        for (Patch.Operation operation : group) {
+            switch (operation.kind()) {
+                case ADD -> {
+                    copy.add(operation.value());
+                    index = null;
+                }
+                case REMOVE -> {
+                    remove(copy, operation);
+                    index = null;
+                }
+                case EDITS -> {
+                    copy = edit((List<Object>) copy, (List<ListEdit<Object>>) operation.value());
+                    index = null;
+                }
+                case ITEM -> {
+                    List<Object> list = (List<Object>) copy;
+                    if (index == null) {
+                        index = new HashMap<>();
+                        for (int i = 0; i < list.size(); i++) {
+                            FieldPlan key = keyOf(list.get(i));
+                            if (key != null) {
+                                index.put(key.get(list.get(i)), i);
+                            }
+                        }
+                    }
+                    Integer i = index.get(operation.key());
+                    if (i == null) {
+                        throw new AuditException("The patch cannot be applied: " + String.join(".", Arrays.copyOf(path, length))
+                                + " has no item " + operation.key());
+                    }
+                    list.set(i, update(list.get(i), operation.path(), length, length + 1, item -> operation.value()));
+                }
+                default -> throw new AuditException("The patch cannot be applied: " + operation.kind() + " on a collection");
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Removes the items of the key of the operation, or the value of the operation when the items have no key
+     */
+    private void remove(Collection<Object> items, Patch.Operation operation) throws IllegalAccessException {
+        if (operation.key() == null) {
+            items.remove(operation.value());
+            return;
+        }
+        for (Iterator<Object> iterator = items.iterator(); iterator.hasNext(); ) {
+            Object item = iterator.next();
+            FieldPlan key = keyOf(item);
+            if (key != null && Objects.equals(key.get(item), operation.key())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Builds the current list from the previous one and the edits of a comparison by position: inserted and moved items
+     * are placed at their current index, the items neither deleted nor moved fill the other indexes in their order
+     */
+    private static List<Object> edit(List<Object> previous, List<ListEdit<Object>> edits) {
+        BitSet taken = new BitSet(previous.size());
+        int size = previous.size();
+        for (ListEdit<Object> edit : edits) {
+            int count = edit.getItems().size();
+            if (edit.getType() != ListEdit.Type.INSERT) {
+                taken.set(edit.getPreviousIndex(), edit.getPreviousIndex() + count);
+            }
+            size += edit.getType() == ListEdit.Type.INSERT ? count : edit.getType() == ListEdit.Type.DELETE ? -count : 0;
+        }
+        Object[] items = new Object[size];
+        BitSet placed = new BitSet(size);
+        for (ListEdit<Object> edit : edits) {
+            if (edit.getType() != ListEdit.Type.DELETE) {
+                for (int k = 0; k < edit.getItems().size(); k++) {
+                    items[edit.getCurrentIndex() + k] = edit.getItems().get(k);
+                }
+                placed.set(edit.getCurrentIndex(), edit.getCurrentIndex() + edit.getItems().size());
+            }
+        }
+        int next = taken.nextClearBit(0);
+        for (int j = placed.nextClearBit(0); j < size; j = placed.nextClearBit(j + 1)) {
+            if (next >= previous.size()) {
+                throw new AuditException("The patch cannot be applied: the list has " + previous.size() + " items, the edits expect more");
+            }
+            items[j] = previous.get(next);
+            next = taken.nextClearBit(next + 1);
+        }
+        return new ArrayList<>(Arrays.asList(items));
+    }
+
+    private static Object splice(Object array, int[] range, Object slice) {
+        int length = Array.getLength(array);
+        int sliceLength = Array.getLength(slice);
+        if (range[1] > length) {
+            throw new AuditException("The patch cannot be applied: the array has " + length + " items, the range ends at " + range[1]);
+        }
+        Object result = Array.newInstance(array.getClass().getComponentType(), length - (range[1] - range[0]) + sliceLength);
+        System.arraycopy(array, 0, result, 0, range[0]);
+        System.arraycopy(slice, 0, result, range[0], sliceLength);
+        System.arraycopy(array, range[1], result, range[0] + sliceLength, length - range[1]);
+        return result;
+    }
+
+    /**
+     * Update of the value at the end of a path
+     */
+    private interface Update {
+        Object apply(Object value) throws IllegalAccessException;
+    }
+
+    /**
+     * Accessors and canonical constructor of a record, turned into method handles taking and returning Objects
+     */
+    private record RecordCopier(String[] names, MethodHandle[] accessors, MethodHandle constructor) {
+
+        static RecordCopier of(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            String[] names = new String[components.length];
+            MethodHandle[] accessors = new MethodHandle[components.length];
+            Class<?>[] types = new Class<?>[components.length];
+            try {
+                MethodHandles.Lookup lookup = FieldPlan.lookupOf(type);
+                for (int i = 0; i < components.length; i++) {
+                    names[i] = components[i].getName();
+                    types[i] = components[i].getType();
+                    accessors[i] = lookup.unreflect(components[i].getAccessor())
+                            .asType(MethodType.methodType(Object.class, Object.class));
+                }
+                Constructor<?> canonical = type.getDeclaredConstructor(types);
+                MethodHandle constructor = lookup.unreflectConstructor(canonical);
+                constructor = constructor.asType(constructor.type().generic()).asSpreader(Object[].class, components.length);
+                return new RecordCopier(names, accessors, constructor);
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new AuditException("Unable to copy the record " + type.getName() + ": " + e.getMessage(), e);
+            }
+        }
+
+        Object copy(Object record, String name, Object value) {
+            Object[] arguments = new Object[names.length];
+            try {
+                for (int i = 0; i < names.length; i++) {
+                    arguments[i] = names[i].equals(name) ? value : (Object) accessors[i].invokeExact(record);
+                }
+                return (Object) constructor.invokeExact(arguments);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new AuditException("Unable to copy the record " + record.getClass().getName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.difference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Include/exclude patterns and maximum depth of a DiffTool, compiled into the fields compared at each node of the
+ * path trie. The fields of a node are resolved when it is first reached, then kept, so a diff matches no pattern.
+ * A pattern is a dot separated path starting with the root type, where '*' stands for one or more names:
+ * 'Book.category.*' includes the fields of the category of a Book, '!*.internalCache' excludes every internalCache field.
+ * With include patterns, only the fields they match, lead to or are nested in are compared
+ */
+final class PathRules {
+
+    private static final int NONE = 0;
+    private static final int PARTIAL = 1;
+    private static final int FULL = 2;
+
+    private final String[][] includes;
+    private final String[][] excludes;
+    private final int maxDepth;
+    private final ConcurrentMap<PropertyPath, Fields> fields = new ConcurrentHashMap<>();
+
+    /**
+     * Fields compared at a node, for the type found there
+     */
+    private record Fields(TypePlan plan, FieldPlan[] fields) {
+    }
+
+    private PathRules(String[][] includes, String[][] excludes, int maxDepth) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Compiles the rules of a configuration. Returns null when there is none, every field is then compared
+     */
+    static PathRules of(List<String> patterns, int maxDepth) {
+        if ((patterns == null || patterns.isEmpty()) && maxDepth <= 0) {
+            return null;
+        }
+        List<String[]> includes = new ArrayList<>();
+        List<String[]> excludes = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                String trimmed = pattern.trim();
+                boolean exclude = trimmed.startsWith("!");
+                String[] names = (exclude ? trimmed.substring(1) : trimmed).split("\\.");
+                for (String name : names) {
+                    if (name.isEmpty()) {
+                        throw new AuditException("Invalid path pattern '" + pattern + "'");
+                    }
+                }
+                (exclude ? excludes : includes).add(names);
+            }
+        }
+        return new PathRules(includes.toArray(new String[0][]), excludes.toArray(new String[0][]), maxDepth);
+    }
+
+    /**
+     * Returns the fields of the plan compared at the given node, the array of the plan itself when none is left out
+     */
+    FieldPlan[] fieldsAt(TypePlan plan, PropertyPath path) {
+        Fields known = fields.get(path);
+        if (known != null && known.plan() == plan) {
+            return known.fields();
+        }
+        FieldPlan[] compiled = compile(plan, path);
+        // A node reached with objects of different types keeps the first one, the others are compiled each time
+        if (known == null) {
+            fields.putIfAbsent(path, new Fields(plan, compiled));
+        }
+        return compiled;
+    }
+
+    private FieldPlan[] compile(TypePlan plan, PropertyPath path) {
+        List<String> names = new ArrayList<>();
+        for (PropertyPath node = path; node != null; node = node.getParent()) {
+            names.add(0, node.getName());
+        }
+        // The root type is at depth 0, its fields at depth 1
+        if (maxDepth > 0 && names.size() > maxDepth) {
+            return new FieldPlan[0];
+        }
+        String[] segments = names.toArray(new String[names.size() + 1]);
+        List<FieldPlan> compared = new ArrayList<>();
+        for (FieldPlan field : plan.getFields()) {
+            segments[segments.length - 1] = field.getName();
+            if (isCompared(segments)) {
+                compared.add(field);
+            }
+        }
+        return compared.size() == plan.getFields().length ? plan.getFields() : compared.toArray(new FieldPlan[0]);
+    }
+
+    private boolean isCompared(String[] segments) {
+        for (String[] exclude : excludes) {
+            if (match(exclude, 0, segments, 0) == FULL) {
+                return false;
+            }
+        }
+        if (includes.length == 0) {
+            return true;
+        }
+        for (String[] include : includes) {
+            if (match(include, 0, segments, 0) != NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches a pattern against a path: FULL when it matches the path or one of its ancestors,
+     * PARTIAL when it may match a descendant of the path, NONE otherwise
+     */
+    private static int match(String[] pattern, int p, String[] segments, int s) {
+        if (p == pattern.length) {
+            return FULL;
+        }
+        if (s == segments.length) {
+            return PARTIAL;
+        }
+        if (pattern[p].equals("*")) {
+            // '*' takes this name, then stops or goes on with the next one
+            return Math.max(match(pattern, p + 1, segments, s + 1), match(pattern, p, segments, s + 1));
+        }
+        return pattern[p].equals(segments[s]) ? match(pattern, p + 1, segments, s + 1) : NONE;
+    }
+}
@@ -0,0 +1,84 @@
+package com.difference;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Configuration of an AuditPipeline
+ */
+public class PipelineConfig {
+    int capacity = 1024;
+    int workers = Runtime.getRuntime().availableProcessors();
+    int batchSize = 64;
+    Backpressure backpressure = Backpressure.BLOCK;
+    ThreadFactory threadFactory;
+    Consumer<Exception> failureHandler;
+
+    /**
+     * Number of pairs the queue holds, rounded up to a power of two
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Number of worker threads diffing the queued pairs, one per CPU by default. A DiffTool comparing large lists in
+     * fork-join tasks (DiffConfig.setParallelThreshold) would add its pool threads to them and oversubscribe the CPUs,
+     * so its parallel threshold should be left at 0 or the workers reduced
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Maximum number of entries written to the sink at once. A worker writes a smaller batch as soon as the queue is empty
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * What submit does when the queue is full, BLOCK by default
+     */
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * Creates the worker threads, e.g. a factory of virtual threads. Null creates daemon platform threads
+     */
+    public ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Receives the exceptions of the diffs and of the sink, which are otherwise only counted
+     */
+    public Consumer<Exception> getFailureHandler() {
+        return failureHandler;
+    }
+
+    public void setFailureHandler(Consumer<Exception> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+}
@@ -0,0 +1,164 @@
+package com.difference;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Path of a property, as a node of a trie shared by every diff of the same root type.
+ * Nodes are interned (a parent holds one child per field name), so traversing an object builds no path,
+ * and the string form is only produced, then kept, when it is first asked for.
+ * Properties of the root are rendered without the root type ('bookName'), nested ones with it ('Book.category.categoryName').
+ */
+public final class PropertyPath {
+
+    private final PropertyPath parent;
+    private final String name;
+    private final boolean item;
+    private final Object key;
+    private final String itemField;
+    private volatile ConcurrentMap<String, PropertyPath> children;
+    private volatile String rendered;
+
+    private PropertyPath(PropertyPath parent, String name, boolean item, Object key, String itemField) {
+        this.parent = parent;
+        this.name = name;
+        this.item = item;
+        this.key = key;
+        this.itemField = itemField;
+    }
+
+    /**
+     * Root of the trie of a type, named after its simple name
+     */
+    static PropertyPath root(String simpleName) {
+        return new PropertyPath(null, simpleName, false, null, null);
+    }
+
+    /**
+     * Path of a field of an item inside a list, rendered as 'list[key].field'. Item paths are not interned
+     */
+    static PropertyPath item(PropertyPath list, Object key, String itemField) {
+        return new PropertyPath(list, list.name, true, key, itemField);
+    }
+
+    /**
+     * Path of an entry of a map, rendered as 'map[key]'. Entry paths are not interned
+     */
+    static PropertyPath entry(PropertyPath map, Object key) {
+        return new PropertyPath(map, null, true, key, null);
+    }
+
+    /**
+     * Returns the interned child of this node for the given field name
+     */
+    PropertyPath child(String fieldName) {
+        ConcurrentMap<String, PropertyPath> map = children;
+        if (map == null) {
+            synchronized (this) {
+                map = children;
+                if (map == null) {
+                    map = new ConcurrentHashMap<>(4);
+                    children = map;
+                }
+            }
+        }
+        PropertyPath child = map.get(fieldName);
+        return child != null ? child : map.computeIfAbsent(fieldName, n -> new PropertyPath(this, n, false, null, null));
+    }
+
+    public PropertyPath getParent() {
+        return parent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether this is the path of an item of a list or of an entry of a map, whose parent is the path of the list or map
+     */
+    boolean isItem() {
+        return item;
+    }
+
+    /**
+     * Key of the item or entry
+     */
+    Object getKey() {
+        return key;
+    }
+
+    /**
+     * Field of the item, null for a map entry
+     */
+    String getItemField() {
+        return itemField;
+    }
+
+    /**
+     * Same path below another node: the part of this path below 'from' is rebuilt below 'to'.
+     * Returns null when this path is not below 'from'
+     */
+    PropertyPath rebase(PropertyPath from, PropertyPath to) {
+        ArrayDeque<PropertyPath> nodes = new ArrayDeque<>();
+        for (PropertyPath node = this; node != from; node = node.parent) {
+            if (node == null) {
+                return null;
+            }
+            nodes.push(node);
+        }
+        PropertyPath path = to;
+        while (!nodes.isEmpty()) {
+            PropertyPath node = nodes.pop();
+            if (!node.item) {
+                path = path.child(node.name);
+            } else {
+                path = node.itemField == null ? entry(path, node.key) : item(path, node.key, node.itemField);
+            }
+        }
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        String s = rendered;
+        if (s == null) {
+            s = render();
+            rendered = s;
+        }
+        return s;
+    }
+
+    private String render() {
+        if (item) {
+            return itemField == null ? parent + "[" + key + "]" : name + "[" + key + "]." + itemField;
+        }
+        if (parent == null || parent.parent == null) {
+            return name;
+        }
+        // Below the first level a rendered ancestor already holds the start of the path. The ancestors are
+        // walked in a loop, so a deep path renders without recursion
+        ArrayDeque<PropertyPath> nodes = new ArrayDeque<>();
+        PropertyPath node = this;
+        String prefix;
+        while (true) {
+            nodes.push(node);
+            PropertyPath ancestor = node.parent;
+            if (ancestor.parent.parent == null) {
+                prefix = ancestor.parent.name + "." + ancestor.name;
+                break;
+            }
+            if (ancestor.rendered != null) {
+                prefix = ancestor.rendered;
+                break;
+            }
+            node = ancestor;
+        }
+        StringBuilder path = new StringBuilder(prefix);
+        while (!nodes.isEmpty()) {
+            path.append('.').append(nodes.pop().name);
+        }
+        return path.toString();
+    }
+}
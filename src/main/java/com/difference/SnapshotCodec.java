@@ -0,0 +1,461 @@
+package com.difference;
+
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Compact binary form of an object graph, laid out after the fields of its {@link TypePlan}.
+ * Every value starts with a tag; nested objects, collections and arrays carry their size in bytes,
+ * so any value can be skipped, or compared to another one byte by byte, without decoding it. Sets and maps are written
+ * in the order of the bytes of their items, so equal ones are written the same whatever their iteration order.
+ * Types are written as ids of a {@link Types} table. A codec is not thread-safe
+ */
+final class SnapshotCodec {
+
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHAR = 5;
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    static final byte STRING = 10;
+    static final byte ENUM = 11;
+    static final byte OTHER = 12;
+    static final byte NESTED = 13;
+    static final byte LIST = 14;
+    static final byte SET = 15;
+    static final byte MAP = 16;
+    static final byte ARRAY = 17;
+
+    /**
+     * Table of the types written in the snapshots
+     */
+    interface Types {
+        int idOf(Class<?> type);
+
+        /**
+         * Id of a type already in the table, -1 when it is not
+         */
+        int find(Class<?> type);
+
+        Class<?> typeOf(int id);
+    }
+
+    private static final Map<String, Class<?>> PRIMITIVES = Map.of("boolean", boolean.class, "byte", byte.class,
+            "char", char.class, "short", short.class, "int", int.class, "long", long.class, "float", float.class,
+            "double", double.class);
+
+    private final Types types;
+    private ByteBuffer out = ByteBuffer.allocate(256);
+    // While writing a lookup, types missing from the table are not added to it
+    private boolean lookup;
+    private boolean missingType;
+    // Nested objects being written, a cyclic graph having no snapshot
+    private final Set<Object> writing = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    SnapshotCodec(Types types) {
+        this.types = types;
+    }
+
+    void reset() {
+        out.clear();
+        writing.clear();
+    }
+
+    /**
+     * The bytes written since the last reset, from position 0 to the returned buffer limit
+     */
+    ByteBuffer written() {
+        return out.duplicate().flip();
+    }
+
+    /**
+     * Writes a value to look it up among the written ones, without adding types to the table.
+     * Returns false when the value holds a type missing from the table: no written value is then equal to it
+     */
+    boolean writeLookup(Object value) throws IllegalAccessException {
+        lookup = true;
+        missingType = false;
+        try {
+            write(value);
+        } finally {
+            lookup = false;
+        }
+        return !missingType;
+    }
+
+    void write(Object value) throws IllegalAccessException {
+        if (value == null) {
+            ensure(1).put(NULL);
+        } else if (value instanceof Boolean b) {
+            ensure(1).put(b ? TRUE : FALSE);
+        } else if (value instanceof Byte b) {
+            ensure(2).put(BYTE).put(b);
+        } else if (value instanceof Short s) {
+            ensure(3).put(SHORT).putShort(s);
+        } else if (value instanceof Character c) {
+            ensure(3).put(CHAR).putChar(c);
+        } else if (value instanceof Integer i) {
+            ensure(5).put(INT).putInt(i);
+        } else if (value instanceof Long l) {
+            ensure(9).put(LONG).putLong(l);
+        } else if (value instanceof Float f) {
+            ensure(5).put(FLOAT).putInt(Float.floatToIntBits(f));
+        } else if (value instanceof Double d) {
+            ensure(9).put(DOUBLE).putLong(Double.doubleToLongBits(d));
+        } else if (value instanceof String s) {
+            writeString(STRING, s);
+        } else if (value instanceof Enum<?> e) {
+            ensure(9).put(ENUM).putInt(idOf(e.getDeclaringClass())).putInt(e.ordinal());
+        } else {
+            switch (ValueKind.of(value)) {
+                case LIST -> writeCollection(LIST, (Collection<?>) value);
+                case SET -> writeCollection(SET, (Collection<?>) value);
+                case MAP -> writeMap((Map<?, ?>) value);
+                case ARRAY -> writeArray(value);
+                case RECORD, BEAN -> writeNested(value);
+                default -> {
+                    if (!hasValueString(value.getClass())) {
+                        throw new AuditException("The type " + value.getClass().getName() + " cannot be snapshotted: its string form does not identify its value");
+                    }
+                    ensure(5).put(OTHER).putInt(idOf(value.getClass()));
+                    writeString(null, value.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the string form of a JDK type identifies its value: numbers, dates, times, durations, zones and a few value types
+     */
+    static boolean hasValueString(Class<?> type) {
+        return Number.class.isAssignableFrom(type) || TemporalAccessor.class.isAssignableFrom(type)
+                || TemporalAmount.class.isAssignableFrom(type) || ZoneId.class.isAssignableFrom(type) || type == UUID.class
+                || type == URI.class || type == Currency.class || type == Locale.class || Path.class.isAssignableFrom(type);
+    }
+
+    private int idOf(Class<?> type) {
+        if (!lookup) {
+            return types.idOf(type);
+        }
+        int id = types.find(type);
+        missingType |= id < 0;
+        return id;
+    }
+
+    private void writeString(Byte tag, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (tag != null) {
+            ensure(1).put(tag);
+        }
+        ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private void writeNested(Object value) throws IllegalAccessException {
+        if (!writing.add(value)) {
+            throw new AuditException("The " + value.getClass().getSimpleName() + " cannot be snapshotted: it is part of a cycle");
+        }
+        ensure(5).put(NESTED).putInt(idOf(value.getClass()));
+        int size = startSize();
+        for (FieldPlan field : TypePlan.of(value.getClass(), AccessMode.REFLECTION).getFields()) {
+            write(field.get(value));
+        }
+        endSize(size);
+        writing.remove(value);
+    }
+
+    private void writeCollection(byte tag, Collection<?> values) throws IllegalAccessException {
+        ensure(1).put(tag);
+        int size = startSize();
+        ensure(4).putInt(values.size());
+        int start = out.position();
+        for (Object value : values) {
+            write(value);
+        }
+        if (tag == SET) {
+            sortValues(start, values.size(), 1);
+        }
+        endSize(size);
+    }
+
+    private void writeMap(Map<?, ?> map) throws IllegalAccessException {
+        ensure(1).put(MAP);
+        int size = startSize();
+        ensure(4).putInt(map.size());
+        int start = out.position();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write(entry.getKey());
+            write(entry.getValue());
+        }
+        sortValues(start, map.size(), 2);
+        endSize(size);
+    }
+
+    /**
+     * Reorders the items written from the given position by their bytes. An item is made of the given number of values,
+     * a map entry being its key followed by its value
+     */
+    private void sortValues(int start, int count, int valuesPerItem) {
+        if (count < 2) {
+            return;
+        }
+        byte[] bytes = new byte[out.position() - start];
+        out.get(start, bytes);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int[] bounds = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            int position = bounds[i];
+            for (int v = 0; v < valuesPerItem; v++) {
+                position = skip(in, position);
+            }
+            bounds[i + 1] = position;
+        }
+        Integer[] order = new Integer[count];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Arrays.compare(bytes, bounds[a], bounds[a + 1], bytes, bounds[b], bounds[b + 1]));
+        int position = start;
+        for (int i : order) {
+            int length = bounds[i + 1] - bounds[i];
+            out.put(position, bytes, bounds[i], length);
+            position += length;
+        }
+    }
+
+    /**
+     * Arrays of primitives are written packed, without a tag per element
+     */
+    private void writeArray(Object array) throws IllegalAccessException {
+        Class<?> component = array.getClass().getComponentType();
+        ensure(5).put(ARRAY).putInt(idOf(component));
+        int size = startSize();
+        int length = Array.getLength(array);
+        ensure(4).putInt(length);
+        if (component == long.class) {
+            for (long l : (long[]) array) {
+                ensure(8).putLong(l);
+            }
+        } else if (component == int.class) {
+            for (int i : (int[]) array) {
+                ensure(4).putInt(i);
+            }
+        } else if (component == double.class) {
+            for (double d : (double[]) array) {
+                ensure(8).putLong(Double.doubleToLongBits(d));
+            }
+        } else if (component == float.class) {
+            for (float f : (float[]) array) {
+                ensure(4).putInt(Float.floatToIntBits(f));
+            }
+        } else if (component == short.class) {
+            for (short s : (short[]) array) {
+                ensure(2).putShort(s);
+            }
+        } else if (component == char.class) {
+            for (char c : (char[]) array) {
+                ensure(2).putChar(c);
+            }
+        } else if (component == byte.class) {
+            ensure(length).put((byte[]) array);
+        } else if (component == boolean.class) {
+            for (boolean b : (boolean[]) array) {
+                ensure(1).put(b ? TRUE : FALSE);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                write(Array.get(array, i));
+            }
+        }
+        endSize(size);
+    }
+
+    private int startSize() {
+        int position = out.position();
+        ensure(4).putInt(0);
+        return position;
+    }
+
+    private void endSize(int position) {
+        out.putInt(position, out.position() - position - 4);
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (out.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+            larger.put(out.flip());
+            out = larger;
+        }
+        return out;
+    }
+
+    /**
+     * Returns the position following the value starting at the given position
+     */
+    static int skip(ByteBuffer in, int position) {
+        return switch (in.get(position)) {
+            case NULL, TRUE, FALSE -> position + 1;
+            case BYTE -> position + 2;
+            case SHORT, CHAR -> position + 3;
+            case INT, FLOAT -> position + 5;
+            case LONG, DOUBLE, ENUM -> position + 9;
+            case STRING, LIST, SET, MAP -> position + 5 + in.getInt(position + 1);
+            case OTHER, NESTED, ARRAY -> position + 9 + in.getInt(position + 5);
+            default -> throw new AuditException("Corrupted snapshot: unknown tag " + in.get(position) + " at " + position);
+        };
+    }
+
+    /**
+     * Decodes the value starting at the given position. Nested objects are not rebuilt: they are read as a map
+     * of their field names to their values. Leaf values other than strings, numbers and enums are read as their string form
+     */
+    Object read(ByteBuffer in, int position) {
+        byte tag = in.get(position);
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.get(position + 1);
+            case SHORT:
+                return in.getShort(position + 1);
+            case CHAR:
+                return in.getChar(position + 1);
+            case INT:
+                return in.getInt(position + 1);
+            case LONG:
+                return in.getLong(position + 1);
+            case FLOAT:
+                return Float.intBitsToFloat(in.getInt(position + 1));
+            case DOUBLE:
+                return Double.longBitsToDouble(in.getLong(position + 1));
+            case STRING:
+                return readString(in, position + 1);
+            case ENUM:
+                return types.typeOf(in.getInt(position + 1)).getEnumConstants()[in.getInt(position + 5)];
+            case OTHER:
+                return readString(in, position + 5);
+            case NESTED: {
+                Map<String, Object> fields = new LinkedHashMap<>();
+                int cursor = position + 9;
+                for (FieldPlan field : TypePlan.of(types.typeOf(in.getInt(position + 1)), AccessMode.REFLECTION).getFields()) {
+                    fields.put(field.getName(), read(in, cursor));
+                    cursor = skip(in, cursor);
+                }
+                return fields;
+            }
+            case LIST:
+            case SET: {
+                int count = in.getInt(position + 5);
+                Collection<Object> values = tag == LIST ? new ArrayList<>(count) : new LinkedHashSet<>();
+                int cursor = position + 9;
+                for (int i = 0; i < count; i++) {
+                    values.add(read(in, cursor));
+                    cursor = skip(in, cursor);
+                }
+                return values;
+            }
+            case MAP: {
+                int count = in.getInt(position + 5);
+                Map<Object, Object> map = new LinkedHashMap<>();
+                int cursor = position + 9;
+                for (int i = 0; i < count; i++) {
+                    Object key = read(in, cursor);
+                    cursor = skip(in, cursor);
+                    map.put(key, read(in, cursor));
+                    cursor = skip(in, cursor);
+                }
+                return map;
+            }
+            case ARRAY:
+                return readArray(in, position);
+            default:
+                throw new AuditException("Corrupted snapshot: unknown tag " + tag + " at " + position);
+        }
+    }
+
+    private Object readArray(ByteBuffer in, int position) {
+        Class<?> component = types.typeOf(in.getInt(position + 1));
+        int length = in.getInt(position + 9);
+        // Items of an array of objects may be decoded as maps or strings, so they are read into an Object[]
+        Object array = component.isPrimitive() ? Array.newInstance(component, length) : new Object[length];
+        int cursor = position + 13;
+        for (int i = 0; i < length; i++) {
+            if (component == long.class) {
+                Array.setLong(array, i, in.getLong(cursor));
+                cursor += 8;
+            } else if (component == int.class) {
+                Array.setInt(array, i, in.getInt(cursor));
+                cursor += 4;
+            } else if (component == double.class) {
+                Array.setDouble(array, i, Double.longBitsToDouble(in.getLong(cursor)));
+                cursor += 8;
+            } else if (component == float.class) {
+                Array.setFloat(array, i, Float.intBitsToFloat(in.getInt(cursor)));
+                cursor += 4;
+            } else if (component == short.class) {
+                Array.setShort(array, i, in.getShort(cursor));
+                cursor += 2;
+            } else if (component == char.class) {
+                Array.setChar(array, i, in.getChar(cursor));
+                cursor += 2;
+            } else if (component == byte.class) {
+                Array.setByte(array, i, in.get(cursor));
+                cursor += 1;
+            } else if (component == boolean.class) {
+                Array.setBoolean(array, i, in.get(cursor) == TRUE);
+                cursor += 1;
+            } else {
+                Array.set(array, i, read(in, cursor));
+                cursor = skip(in, cursor);
+            }
+        }
+        return array;
+    }
+
+    private static String readString(ByteBuffer in, int position) {
+        int length = in.getInt(position);
+        byte[] bytes = new byte[length];
+        in.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Resolves a type written by name in a snapshot or log file
+     */
+    static Class<?> typeNamed(String name) {
+        Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) {
+            return primitive;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            return Class.forName(name, false, loader != null ? loader : SnapshotCodec.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new AuditException("The file holds the unknown type " + name, e);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.difference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Store of the previous state of audited entities, kept out of the Java heap in the compact binary form of
+ * {@link SnapshotCodec}, so diffing an entity no longer needs a deep copy of its previous state.
+ * Snapshots live in segments of direct buffers, or of a memory-mapped file that can be opened again later.
+ * A live object is compared to its snapshot byte by byte along its fields: only the nested objects that differ are
+ * walked and only the values that changed are decoded. The snapshot is then overwritten in place when its slot is large enough.
+ * Entities are identified by their 'id' or @AuditKey value, or by the key given to the methods. Snapshots are indexed
+ * by the encoded form of their key, so a key finds its snapshot in a file opened again even when it is not read back as
+ * an equal object (a UUID is read as its string).
+ * The methods are synchronized, so a store can be shared between threads
+ */
+public class SnapshotStore<T> implements Closeable {
+
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    // Slot header: capacity of the payload, then its length or one of the states below
+    private static final int HEADER = 8;
+    private static final int FREE = -1;
+    private static final int TYPE = -2;
+
+    private final int segmentSize;
+    private final FileChannel channel;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    // Slots of the snapshots by encoded key
+    private final Map<ByteBuffer, Long> slots = new HashMap<>();
+    private final TreeMap<Integer, ArrayDeque<Long>> freeSlots = new TreeMap<>();
+    private final Map<Class<?>, Integer> typeIds = new HashMap<>();
+    private final List<Class<?>> types = new ArrayList<>();
+    private final SnapshotCodec codec;
+    // Next free position at the end of the allocated space
+    private long top;
+
+    /**
+     * Store keeping its snapshots in direct buffers
+     */
+    public SnapshotStore() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SnapshotStore(int segmentSize) {
+        this.segmentSize = segmentSize;
+        this.channel = null;
+        this.codec = new SnapshotCodec(new TypeTable());
+    }
+
+    /**
+     * Store keeping its snapshots in the given file, mapped in memory. The snapshots already in the file are loaded
+     */
+    public SnapshotStore(Path file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SnapshotStore(Path file, int segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.codec = new SnapshotCodec(new TypeTable());
+        long existing = (channel.size() + segmentSize - 1) / segmentSize;
+        List<Long> entities = new ArrayList<>();
+        for (int i = 0; i < existing; i++) {
+            load(segment(i), i, entities);
+        }
+        for (long slot : entities) {
+            ByteBuffer segment = segment((int) (slot / segmentSize));
+            int payload = (int) (slot % segmentSize) + HEADER;
+            slots.put(copy(segment, payload, SnapshotCodec.skip(segment, payload)), slot);
+        }
+    }
+
+    /**
+     * Stores the state of an entity, replacing its previous snapshot
+     */
+    public synchronized void put(T current) throws IllegalAccessException {
+        put(keyOf(current), current);
+    }
+
+    public synchronized void put(Object key, T current) throws IllegalAccessException {
+        int valueStart = encode(key, current);
+        store(slots.get(codec.written().limit(valueStart)), codec.written());
+    }
+
+    /**
+     * Compares an entity to its snapshot. Each changed property is a propertyUpdate holding the previous value,
+     * decoded from the snapshot, and the current value, rather than the objects owning the property.
+     * A nested object changed to another type, or a changed collection, is reported as a whole.
+     * Throws an AuditException when the entity has no snapshot
+     */
+    public synchronized List<ChangeType> diff(T current) throws IllegalAccessException {
+        return diff(keyOf(current), current);
+    }
+
+    public synchronized List<ChangeType> diff(Object key, T current) throws IllegalAccessException {
+        int valueStart = encode(key, current);
+        Long slot = slots.get(codec.written().limit(valueStart));
+        if (slot == null) {
+            throw new AuditException("No snapshot stored for " + key);
+        }
+        return compare(slot, valueStart, current);
+    }
+
+    /**
+     * Compares an entity to its snapshot, then stores its current state in place of the snapshot.
+     * An entity without snapshot is stored and has no change
+     */
+    public synchronized List<ChangeType> update(T current) throws IllegalAccessException {
+        return update(keyOf(current), current);
+    }
+
+    public synchronized List<ChangeType> update(Object key, T current) throws IllegalAccessException {
+        int valueStart = encode(key, current);
+        Long slot = slots.get(codec.written().limit(valueStart));
+        if (slot == null) {
+            store(null, codec.written());
+            return new ArrayList<>();
+        }
+        List<ChangeType> changes = compare(slot, valueStart, current);
+        if (!changes.isEmpty()) {
+            store(slot, codec.written());
+        }
+        return changes;
+    }
+
+    public synchronized boolean contains(Object key) {
+        return slotOf(key) != null;
+    }
+
+    /**
+     * Removes the snapshot of an entity, its space is reused by the next snapshots
+     */
+    public synchronized boolean remove(Object key) {
+        Long slot = slotOf(key);
+        if (slot == null) {
+            return false;
+        }
+        slots.remove(codec.written());
+        free(slot);
+        return true;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Flushes the mapped segments to the file. The direct buffers of a store in memory are released with the store
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            channel.close();
+        }
+        segments.clear();
+        slots.clear();
+        freeSlots.clear();
+    }
+
+    private Object keyOf(T current) throws IllegalAccessException {
+        if (current == null) {
+            throw new AuditException("Provided data is not valid. The object is null");
+        }
+        FieldPlan key = TypePlan.of(current.getClass(), AccessMode.REFLECTION).getKey();
+        if (key == null) {
+            throw new AuditException("The audit system lacks the information it needs to determine what has changed");
+        }
+        return key.get(current);
+    }
+
+    /**
+     * Slot of the snapshot of a key, which is left encoded in the codec. A key holding a type never written has none
+     */
+    private Long slotOf(Object key) {
+        try {
+            codec.reset();
+            return codec.writeLookup(key) ? slots.get(codec.written()) : null;
+        } catch (IllegalAccessException e) {
+            throw new AuditException("Unable to encode the key " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copy of a range of bytes, used as the key of a slot
+     */
+    private static ByteBuffer copy(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Encodes the key followed by the entity and returns the position of the entity
+     */
+    private int encode(Object key, T current) throws IllegalAccessException {
+        if (current == null) {
+            throw new AuditException("Provided data is not valid. The object is null");
+        }
+        codec.reset();
+        codec.write(key);
+        int valueStart = codec.written().limit();
+        codec.write(current);
+        return valueStart;
+    }
+
+    private List<ChangeType> compare(long slot, int valueStart, T current) throws IllegalAccessException {
+        ByteBuffer segment = segment((int) (slot / segmentSize));
+        int payload = (int) (slot % segmentSize) + HEADER;
+        int previousStart = SnapshotCodec.skip(segment, payload);
+        int previousEnd = SnapshotCodec.skip(segment, previousStart);
+        ByteBuffer written = codec.written();
+
+        List<ChangeType> changes = new ArrayList<>();
+        if (sameBytes(segment, previousStart, previousEnd, written, valueStart, written.limit())) {
+            return changes;
+        }
+        TypePlan plan = TypePlan.of(current.getClass(), AccessMode.REFLECTION);
+        if (segment.get(previousStart) == SnapshotCodec.NESTED && sameType(segment, previousStart, written, valueStart)) {
+            compareFields(current, plan, segment, previousStart + 9, written, valueStart + 9, plan.getRootPath(), changes);
+        } else {
+            changes.add(propertyUpdate(plan.getRootPath(), codec.read(segment, previousStart), current));
+        }
+        return changes;
+    }
+
+    /**
+     * Walks the fields of an object and of its snapshot in step, descending only into the nested objects that differ
+     */
+    private void compareFields(Object current, TypePlan plan, ByteBuffer previous, int previousPosition, ByteBuffer written,
+                               int position, PropertyPath parent, List<ChangeType> changes) throws IllegalAccessException {
+        for (FieldPlan field : plan.getFields()) {
+            int previousEnd = SnapshotCodec.skip(previous, previousPosition);
+            int end = SnapshotCodec.skip(written, position);
+            if (!sameBytes(previous, previousPosition, previousEnd, written, position, end)) {
+                PropertyPath path = parent.child(field.getName());
+                Object value = field.get(current);
+                if (previous.get(previousPosition) == SnapshotCodec.NESTED && written.get(position) == SnapshotCodec.NESTED
+                        && sameType(previous, previousPosition, written, position)) {
+                    compareFields(value, TypePlan.of(value.getClass(), AccessMode.REFLECTION), previous, previousPosition + 9,
+                            written, position + 9, path, changes);
+                } else {
+                    changes.add(propertyUpdate(path, codec.read(previous, previousPosition), value));
+                }
+            }
+            previousPosition = previousEnd;
+            position = end;
+        }
+    }
+
+    private static PropertyUpdate<Object> propertyUpdate(PropertyPath path, Object previous, Object current) {
+        PropertyUpdate<Object> propertyUpdate = new PropertyUpdate<>();
+        propertyUpdate.setPath(path);
+        propertyUpdate.setPrevious(previous);
+        propertyUpdate.setCurrent(current);
+        return propertyUpdate;
+    }
+
+    private static boolean sameType(ByteBuffer previous, int previousPosition, ByteBuffer written, int position) {
+        return previous.getInt(previousPosition + 1) == written.getInt(position + 1);
+    }
+
+    private static boolean sameBytes(ByteBuffer a, int aFrom, int aTo, ByteBuffer b, int bFrom, int bTo) {
+        return aTo - aFrom == bTo - bFrom && a.slice(aFrom, aTo - aFrom).equals(b.slice(bFrom, bTo - bFrom));
+    }
+
+    /**
+     * Writes the payload (encoded key, then entity) in the slot of the entity when it fits, otherwise in a new slot
+     */
+    private void store(Long slot, ByteBuffer payload) {
+        int length = payload.remaining();
+        if (slot == null || capacityOf(slot) < length) {
+            if (slot != null) {
+                free(slot);
+            }
+            slot = allocate(length);
+            slots.put(copy(payload, 0, SnapshotCodec.skip(payload, 0)), slot);
+        }
+        write(slot, length, payload);
+    }
+
+    private void write(long slot, int state, ByteBuffer payload) {
+        ByteBuffer segment = segment((int) (slot / segmentSize));
+        int offset = (int) (slot % segmentSize);
+        segment.put(offset + HEADER, payload, payload.position(), payload.remaining());
+        segment.putInt(offset + 4, state);
+    }
+
+    private int capacityOf(long slot) {
+        return segment((int) (slot / segmentSize)).getInt((int) (slot % segmentSize));
+    }
+
+    /**
+     * Takes a free slot holding up to twice the length, or a new slot at the end of the allocated space.
+     * New slots leave a quarter of room so a snapshot growing a little stays in place
+     */
+    private long allocate(int length) {
+        Map.Entry<Integer, ArrayDeque<Long>> free = freeSlots.subMap(length, true, length * 2, true).firstEntry();
+        if (free != null) {
+            long slot = free.getValue().poll();
+            if (free.getValue().isEmpty()) {
+                freeSlots.remove(free.getKey());
+            }
+            return slot;
+        }
+
+        int capacity = (length + length / 4 + 7) & ~7;
+        if (capacity + HEADER > segmentSize) {
+            throw new AuditException("A snapshot of " + length + " bytes does not fit in segments of " + segmentSize + " bytes");
+        }
+        int offset = (int) (top % segmentSize);
+        if (offset + HEADER + capacity > segmentSize) {
+            // The end of the segment becomes a free slot when it can hold a header
+            if (segmentSize - offset >= HEADER) {
+                ByteBuffer segment = segment((int) (top / segmentSize));
+                segment.putInt(offset, segmentSize - offset - HEADER);
+                segment.putInt(offset + 4, FREE);
+                freeSlots.computeIfAbsent(segmentSize - offset - HEADER, c -> new ArrayDeque<>()).add(top);
+            }
+            top += segmentSize - offset;
+        }
+        long slot = top;
+        segment((int) (slot / segmentSize)).putInt((int) (slot % segmentSize), capacity);
+        top += HEADER + capacity;
+        return slot;
+    }
+
+    private void free(long slot) {
+        segment((int) (slot / segmentSize)).putInt((int) (slot % segmentSize) + 4, FREE);
+        freeSlots.computeIfAbsent(capacityOf(slot), c -> new ArrayDeque<>()).add(slot);
+    }
+
+    /**
+     * Returns a segment, allocating or mapping it when it is first used
+     */
+    private ByteBuffer segment(int index) {
+        while (segments.size() <= index) {
+            if (channel == null) {
+                segments.add(ByteBuffer.allocateDirect(segmentSize));
+                continue;
+            }
+            try {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize));
+            } catch (IOException e) {
+                throw new AuditException("Unable to map the snapshot file: " + e.getMessage(), e);
+            }
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Rebuilds the type table and the free slots from a segment of an existing file and collects its entity slots
+     */
+    private void load(ByteBuffer segment, int index, List<Long> entities) {
+        int offset = 0;
+        while (offset + HEADER <= segmentSize) {
+            int capacity = segment.getInt(offset);
+            int state = segment.getInt(offset + 4);
+            if (capacity == 0 && state == 0) {
+                break;
+            }
+            long slot = (long) index * segmentSize + offset;
+            if (state == FREE) {
+                freeSlots.computeIfAbsent(capacity, c -> new ArrayDeque<>()).add(slot);
+            } else if (state == TYPE) {
+                byte[] name = new byte[segment.getInt(offset + HEADER + 4)];
+                segment.get(offset + HEADER + 8, name);
+                registerType(segment.getInt(offset + HEADER), SnapshotCodec.typeNamed(new String(name, StandardCharsets.UTF_8)));
+            } else {
+                entities.add(slot);
+            }
+            offset += HEADER + capacity;
+            top = slot + HEADER + capacity;
+        }
+    }
+
+    private void registerType(int id, Class<?> type) {
+        while (types.size() <= id) {
+            types.add(null);
+        }
+        types.set(id, type);
+        typeIds.put(type, id);
+    }
+
+    /**
+     * Type ids are given in order of first use and written to the store as type slots, so a file can be loaded again
+     */
+    private final class TypeTable implements SnapshotCodec.Types {
+
+        @Override
+        public int idOf(Class<?> type) {
+            Integer id = typeIds.get(type);
+            if (id != null) {
+                return id;
+            }
+            id = types.size();
+            byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer payload = ByteBuffer.allocate(8 + name.length).putInt(id).putInt(name.length).put(name).flip();
+            write(allocate(payload.remaining()), TYPE, payload);
+            registerType(id, type);
+            return id;
+        }
+
+        @Override
+        public int find(Class<?> type) {
+            return typeIds.getOrDefault(type, -1);
+        }
+
+        @Override
+        public Class<?> typeOf(int id) {
+            return types.get(id);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.difference;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Diff plan of a type: its accessible fields, without the @AuditIgnore ones, the resolved 'id' or @AuditKey field
+ * and the @AuditVersion field.
+ * The fields of a record are its components, in their declaration order, read through their accessors.
+ * Plans are built once per class and shared between threads.
+ */
+final class TypePlan {
+
+    private static final String ID = "id";
+
+    private static final ClassValue<TypePlan> REFLECTION_PLANS = new ClassValue<>() {
+        @Override
+        protected TypePlan computeValue(Class<?> type) {
+            return new TypePlan(type, AccessMode.REFLECTION);
+        }
+    };
+
+    private static final ClassValue<TypePlan> METHOD_HANDLE_PLANS = new ClassValue<>() {
+        @Override
+        protected TypePlan computeValue(Class<?> type) {
+            return new TypePlan(type, AccessMode.METHOD_HANDLE);
+        }
+    };
+
+    private final String simpleName;
+    private final FieldPlan[] fields;
+    private final FieldPlan key;
+    private final FieldPlan version;
+    private final int listFieldCount;
+    private final PropertyPath rootPath;
+    private final Map<String, FieldPlan> byName = new HashMap<>();
+
+    private TypePlan(Class<?> type, AccessMode accessMode) {
+        RecordComponent[] components = type.isRecord() ? type.getRecordComponents() : null;
+        Field[] declared = components == null ? type.getDeclaredFields() : new Field[components.length];
+        for (int i = 0; components != null && i < components.length; i++) {
+            try {
+                // Annotations of a component targeting fields are only found on its field
+                declared[i] = type.getDeclaredField(components[i].getName());
+            } catch (NoSuchFieldException e) {
+                throw new AuditException("The record " + type.getName() + " has no field for its component " + components[i].getName(), e);
+            }
+        }
+        FieldPlan[] plans = new FieldPlan[declared.length];
+        FieldPlan keyPlan = null;
+        FieldPlan versionPlan = null;
+        int count = 0;
+        int lists = 0;
+        for (int i = 0; i < declared.length; i++) {
+            Field field = declared[i];
+            if (field.isAnnotationPresent(AuditIgnore.class)) {
+                continue;
+            }
+            FieldPlan plan = new FieldPlan(field, components == null ? null : components[i].getAccessor(), accessMode);
+            plans[count++] = plan;
+            byName.put(plan.getName(), plan);
+            if (plan.isList()) {
+                lists++;
+            }
+            if (keyPlan == null && (ID.equals(field.getName()) || field.isAnnotationPresent(AuditKey.class))) {
+                keyPlan = plan;
+            }
+            if (versionPlan == null && field.isAnnotationPresent(AuditVersion.class)) {
+                versionPlan = plan;
+            }
+        }
+        this.simpleName = type.getSimpleName();
+        this.fields = count == plans.length ? plans : Arrays.copyOf(plans, count);
+        this.key = keyPlan;
+        this.version = versionPlan;
+        this.listFieldCount = lists;
+        this.rootPath = PropertyPath.root(simpleName);
+    }
+
+    /**
+     * Returns the cached plan of the given type, building it on first use
+     */
+    static TypePlan of(Class<?> type, AccessMode accessMode) {
+        return accessMode == AccessMode.METHOD_HANDLE ? METHOD_HANDLE_PLANS.get(type) : REFLECTION_PLANS.get(type);
+    }
+
+    String getSimpleName() {
+        return simpleName;
+    }
+
+    FieldPlan[] getFields() {
+        return fields;
+    }
+
+    /**
+     * The field of the given name, or null when the type has none or it is ignored
+     */
+    FieldPlan getField(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * The 'id' or @AuditKey field, or null when the type has none
+     */
+    FieldPlan getKey() {
+        return key;
+    }
+
+    /**
+     * The @AuditVersion field, or null when the type has none
+     */
+    FieldPlan getVersion() {
+        return version;
+    }
+
+    /**
+     * Root of the property paths of the diffs starting at this type
+     */
+    PropertyPath getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * Number of fields declared as a List
+     */
+    int getListFieldCount() {
+        return listFieldCount;
+    }
+}
@@ -0,0 +1,70 @@
+package com.difference;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classification of a runtime type used by the traversal to decide how a value is compared.
+ * It is computed once per class from the type itself (primitive box, enum, record, class loader), without name checks
+ */
+enum ValueKind {
+    /**
+     * Numbers, booleans, characters, strings and enums, compared with equals
+     */
+    LEAF,
+    /**
+     * Other types of the JDK (java.time, UUID, Optional...), compared with equals and never walked
+     */
+    VALUE,
+    LIST,
+    MAP,
+    SET,
+    ARRAY,
+    /**
+     * Record, walked through its component accessors
+     */
+    RECORD,
+    /**
+     * Any other class, walked through its fields, or its getters when its fields cannot be opened
+     */
+    BEAN;
+
+    private static final ClassValue<ValueKind> KINDS = new ClassValue<>() {
+        @Override
+        protected ValueKind computeValue(Class<?> type) {
+            if (type.isArray()) {
+                return ARRAY;
+            } else if (List.class.isAssignableFrom(type)) {
+                return LIST;
+            } else if (Map.class.isAssignableFrom(type)) {
+                return MAP;
+            } else if (Set.class.isAssignableFrom(type)) {
+                return SET;
+            } else if (type.isPrimitive() || type == String.class || type == Boolean.class || type == Character.class
+                    || Number.class.isAssignableFrom(type) && type.getClassLoader() == null || Enum.class.isAssignableFrom(type)) {
+                return LEAF;
+            } else if (type.getClassLoader() == null || type.getClassLoader() == ClassLoader.getPlatformClassLoader()) {
+                // Loaded by the boot or platform loader: a type of the JDK, whose fields are encapsulated
+                return VALUE;
+            } else if (type.isRecord()) {
+                return RECORD;
+            }
+            return BEAN;
+        }
+    };
+
+    /**
+     * Returns the cached kind of the runtime type of the given value
+     */
+    static ValueKind of(Object value) {
+        return KINDS.get(value.getClass());
+    }
+
+    /**
+     * Whether values of this kind are objects whose properties are compared one by one
+     */
+    boolean isNested() {
+        return this == RECORD || this == BEAN;
+    }
+}
@@ -1,13 +1,47 @@
 package com.difference;
 
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DiffToolTest {
 
@@ -158,6 +192,22 @@ public class DiffToolTest {
         assertEquals(expected.getRemoved(), ((ListUpdate<?>) list.get(0)).getRemoved());
     }
 
+    @Test
+    @DisplayName("Test for deeply nested property paths shared between diffs")
+    public void diffDeepNestedPropertyPath() throws IllegalAccessException {
+
+        Shelf previousShelf = new Shelf(1, new Book(1, "book1", new Category(1, "cat1")));
+        Shelf currentShelf = new Shelf(1, new Book(1, "book1", new Category(1, "cat2")));
+
+        DiffTool<Shelf> diffTool = new DiffTool<>();
+        List<ChangeType> first = diffTool.diff(previousShelf, currentShelf);
+        List<ChangeType> second = diffTool.diff(previousShelf, currentShelf);
+
+        assertEquals("Shelf.book.category.categoryName", first.get(0).getProperty());
+        assertSame(first.get(0).getPath(), second.get(0).getPath());
+        assertSame(first.get(0).getProperty(), second.get(0).getProperty());
+    }
+
     @Test
     @DisplayName("Test for added/removed items with id")
     public void diffAddedRemovedItemsWithId() throws IllegalAccessException, NoSuchFieldException {
@@ -198,7 +248,7 @@ public class DiffToolTest {
         assertEquals(expectedList.getRemoved(), ((ListUpdate<?>) list.get(0)).getRemoved());
 
         PropertyUpdate<Account> expectedProperty = new PropertyUpdate<>();
-        expectedProperty.setProperty("accounts[id].accountName");
+        expectedProperty.setProperty("accounts[2].accountName");
         expectedProperty.setCurrent(new Account(2, "account5"));
         expectedProperty.setPrevious(new Account(2, "account2"));
 
@@ -236,7 +286,7 @@ public class DiffToolTest {
         assertEquals(expectedList.getRemoved(), ((ListUpdate<?>) list.get(1)).getRemoved());
 
         PropertyUpdate<Account> expectedProperty = new PropertyUpdate<>();
-        expectedProperty.setProperty("accounts[id].accountName");
+        expectedProperty.setProperty("accounts[2].accountName");
         expectedProperty.setCurrent(new Account(2, "account5"));
         expectedProperty.setPrevious(new Account(2, "account2"));
 
@@ -245,6 +295,198 @@ public class DiffToolTest {
         assertEquals(expectedProperty.getCurrent(), ((PropertyUpdate<?>) list.get(2)).getCurrent());
     }
 
+    @Test
+    @DisplayName("Test for every modified item in a list with id")
+    public void diffAllModifiedItemsWithId() throws IllegalAccessException {
+
+        Client previousClient = new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2"), new Account(3, "account3")));
+        Client currentClient = new Client(1, "client1", List.of(new Account(3, "account6"), new Account(2, "account2"), new Account(1, "account5")));
+
+        DiffTool<Client> diffTool = new DiffTool<>();
+        List<ChangeType> list = diffTool.diff(previousClient, currentClient);
+
+        assertEquals(3, list.size());
+        assertEquals("accounts", list.get(0).getProperty());
+        assertEquals(List.of(), ((ListUpdate<?>) list.get(0)).getAdded());
+        assertEquals(List.of(), ((ListUpdate<?>) list.get(0)).getRemoved());
+
+        assertEquals("accounts[3].accountName", list.get(1).getProperty());
+        assertEquals(new Account(3, "account3"), ((PropertyUpdate<?>) list.get(1)).getPrevious());
+        assertEquals(new Account(3, "account6"), ((PropertyUpdate<?>) list.get(1)).getCurrent());
+
+        assertEquals("accounts[1].accountName", list.get(2).getProperty());
+        assertEquals(new Account(1, "account1"), ((PropertyUpdate<?>) list.get(2)).getPrevious());
+        assertEquals(new Account(1, "account5"), ((PropertyUpdate<?>) list.get(2)).getCurrent());
+    }
+
+    @Test
+    @DisplayName("Test for changes streamed to a listener that stops the traversal")
+    public void diffListenerStopsTraversal() throws IllegalAccessException {
+
+        Client previousClient = new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2"), new Account(3, "account3")));
+        Client currentClient = new Client(1, "client2", List.of(new Account(1, "account1"), new Account(2, "account5"), new Account(4, "account4")));
+
+        DiffTool<Client> diffTool = new DiffTool<>();
+        List<ChangeType> all = new ArrayList<>();
+        diffTool.diff(previousClient, currentClient, all::add);
+        assertEquals(3, all.size());
+        assertEquals("clientName", all.get(0).getProperty());
+        assertEquals("accounts", all.get(1).getProperty());
+        assertEquals("accounts[2].accountName", all.get(2).getProperty());
+
+        List<ChangeType> received = new ArrayList<>();
+        diffTool.diff(previousClient, currentClient, change -> {
+            received.add(change);
+            return received.size() < 2;
+        });
+        assertEquals(2, received.size());
+        assertEquals("accounts", received.get(1).getProperty());
+    }
+
+    @Test
+    @DisplayName("Test for presence of changes")
+    public void hasChanges() throws IllegalAccessException {
+
+        DiffTool<Client> diffTool = new DiffTool<>();
+        assertFalse(diffTool.hasChanges(new Client(1, "client1", List.of(new Account(1, "account1"))),
+                new Client(1, "client1", List.of(new Account(1, "account1")))));
+        assertTrue(diffTool.hasChanges(new Client(1, "client1", List.of(new Account(1, "account1"))),
+                new Client(1, "client1", List.of(new Account(1, "account2")))));
+        assertTrue(diffTool.hasChanges(new Client(1, "client1", List.of(new Account(1, "account1"))),
+                new Client(1, "client1", List.of(new Account(2, "account1")))));
+
+        DiffTool<Book> bookDiffTool = new DiffTool<>();
+        assertFalse(bookDiffTool.hasChanges(new Book(1, "book1", new Category(1, "cat1")), new Book(1, "book1", new Category(1, "cat1"))));
+        assertTrue(bookDiffTool.hasChanges(new Book(1, "book1", new Category(1, "cat1")), new Book(1, "book1", new Category(1, "cat2"))));
+        assertTrue(bookDiffTool.hasChanges(new Book(1, "book1", new Category(1, "cat1")), new Book(1, "book1", null)));
+    }
+
+    @Test
+    @DisplayName("Test for batch diff keeping the input order")
+    public void diffAllKeepsOrder() throws IllegalAccessException {
+
+        List<DiffPair<Book>> pairs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String currentName = i % 3 == 0 ? "book" + i + "-2" : "book" + i;
+            pairs.add(new DiffPair<>(new Book(i, "book" + i, new Category(i, "cat" + i)),
+                    new Book(i, currentName, new Category(i, i % 5 == 0 ? "cat" : "cat" + i))));
+        }
+
+        DiffConfig config = new DiffConfig();
+        config.setParallelism(4);
+        config.setBatchSize(16);
+        DiffTool<Book> diffTool = new DiffTool<>(config);
+        List<List<ChangeType>> results = diffTool.diffAll(pairs);
+
+        assertEquals(pairs.size(), results.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            List<ChangeType> expected = diffTool.diff(pairs.get(i).previous(), pairs.get(i).current());
+            assertEquals(expected.size(), results.get(i).size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).getProperty(), results.get(i).get(j).getProperty());
+                assertEquals(((PropertyUpdate<?>) expected.get(j)).getCurrent(), ((PropertyUpdate<?>) results.get(i).get(j)).getCurrent());
+            }
+        }
+        assertThrows(AuditException.class, () -> diffTool.diffAll(List.of(new DiffPair<>(null, new Book(1, "book1", null)))));
+
+        // Closing shuts down the pool owned by the DiffTool, never a pool given by the caller
+        diffTool.close();
+        assertThrows(RejectedExecutionException.class, () -> diffTool.diffAll(pairs));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        config.setPool(pool);
+        try (DiffTool<Book> shared = new DiffTool<>(config)) {
+            assertEquals(pairs.size(), shared.diffAll(pairs).size());
+        }
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test for large lists compared in parallel with the same result as sequentially")
+    public void diffLargeListsInParallel() throws IllegalAccessException {
+
+        List<Account> previousAccounts = new ArrayList<>();
+        List<Account> currentAccounts = new ArrayList<>();
+        List<Subject> previousSubjects = new ArrayList<>();
+        List<Subject> currentSubjects = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            previousAccounts.add(new Account(i, "account" + i));
+            currentAccounts.add(new Account(i + 10, i % 7 == 0 ? "changed" + i : "account" + (i + 10)));
+            previousSubjects.add(new Subject(i, "subject" + i));
+            currentSubjects.add(new Subject(i, i % 11 == 0 ? "changed" + i : "subject" + i));
+        }
+        Library previousLibrary = new Library(1, previousAccounts, "library1", previousSubjects);
+        Library currentLibrary = new Library(1, currentAccounts, "library2", currentSubjects);
+
+        // Parallel comparisons are opt-in
+        assertEquals(0, new DiffConfig().getParallelThreshold());
+        List<DiffStats> stats = new ArrayList<>();
+        DiffConfig sequential = new DiffConfig();
+        sequential.setMetrics(stats::add);
+        DiffConfig parallel = new DiffConfig();
+        parallel.setParallelThreshold(100);
+        parallel.setParallelism(4);
+        parallel.setMetrics(stats::add);
+
+        List<ChangeType> expected = new DiffTool<Library>(sequential).diff(previousLibrary, currentLibrary);
+        List<ChangeType> list;
+        try (DiffTool<Library> diffTool = new DiffTool<>(parallel)) {
+            list = diffTool.diff(previousLibrary, currentLibrary);
+        }
+
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProperty(), list.get(i).getProperty());
+        }
+        // The statistics of the fork-join tasks are merged into the ones of the diff
+        assertEquals(stats.get(0).getChanges(), stats.get(1).getChanges());
+        assertEquals(stats.get(0).getFieldsVisited(), stats.get(1).getFieldsVisited());
+        assertEquals(stats.get(0).getListsCompared(), stats.get(1).getListsCompared());
+        assertEquals(stats.get(0).getListItemsCompared(), stats.get(1).getListItemsCompared());
+        assertEquals(stats.get(0).getLargestList(), stats.get(1).getLargestList());
+        assertEquals("accounts", list.get(0).getProperty());
+        assertEquals(10, ((ListUpdate<?>) list.get(0)).getAdded().size());
+        assertEquals(10, ((ListUpdate<?>) list.get(0)).getRemoved().size());
+    }
+
+    @Test
+    @DisplayName("Test for map, set and array properties")
+    public void diffMapSetAndArray() throws IllegalAccessException {
+
+        Inventory previousInventory = new Inventory(1, Map.of("pen", 10, "ink", 3, "cap", 1), Set.of("office", "school"),
+                new long[]{1, 2, 3, 4, 5, 6}, new String[]{"a", "b"});
+        Inventory currentInventory = new Inventory(1, Map.of("pen", 12, "ink", 3, "pad", 7), Set.of("office", "home"),
+                new long[]{1, 2, 9, 9, 5, 6}, new String[]{"a", "b"});
+
+        DiffTool<Inventory> diffTool = new DiffTool<>();
+        List<ChangeType> list = diffTool.diff(previousInventory, currentInventory);
+
+        assertEquals(4, list.size());
+        MapUpdate<?, ?> mapUpdate = (MapUpdate<?, ?>) list.get(0);
+        assertEquals("stock", mapUpdate.getProperty());
+        assertEquals(Map.of("pad", 7), mapUpdate.getAdded());
+        assertEquals(Map.of("cap", 1), mapUpdate.getRemoved());
+
+        PropertyUpdate<?> entryUpdate = (PropertyUpdate<?>) list.get(1);
+        assertEquals("stock[pen]", entryUpdate.getProperty());
+        assertEquals(10, entryUpdate.getPrevious());
+        assertEquals(12, entryUpdate.getCurrent());
+
+        ListUpdate<?> setUpdate = (ListUpdate<?>) list.get(2);
+        assertEquals("tags", setUpdate.getProperty());
+        assertEquals(List.of("home"), setUpdate.getAdded());
+        assertEquals(List.of("school"), setUpdate.getRemoved());
+
+        ArrayUpdate arrayUpdate = (ArrayUpdate) list.get(3);
+        assertEquals("readings", arrayUpdate.getProperty());
+        assertEquals(2, arrayUpdate.getFromIndex());
+        assertEquals(4, arrayUpdate.getPreviousToIndex());
+        assertEquals(4, arrayUpdate.getCurrentToIndex());
+
+        assertFalse(diffTool.hasChanges(previousInventory, new Inventory(1, Map.of("pen", 10, "ink", 3, "cap", 1),
+                Set.of("school", "office"), new long[]{1, 2, 3, 4, 5, 6}, new String[]{"a", "b"})));
+    }
+
     @Test
     @DisplayName("Test for modified list item when has no id nor @AuditKey")
     public void noIdNoAuditKey() {
@@ -256,6 +498,56 @@ public class DiffToolTest {
         assertThrows(AuditException.class, () -> diffTool.diff(previousCar, currentCar));
     }
 
+    @Test
+    @DisplayName("Test for inserted, deleted and moved items in a list without id compared by position")
+    public void diffOrderedListWithoutId() throws IllegalAccessException {
+
+        Playlist previousPlaylist = new Playlist(1, List.of("a", "b", "c", "d", "e"));
+        Playlist currentPlaylist = new Playlist(1, List.of("a", "c", "d", "x", "e", "b"));
+
+        DiffConfig config = new DiffConfig();
+        config.setOrderedLists(true);
+        DiffTool<Playlist> diffTool = new DiffTool<>(config);
+        List<ChangeType> list = diffTool.diff(previousPlaylist, currentPlaylist);
+
+        assertEquals(1, list.size());
+        ListUpdate<?> listUpdate = (ListUpdate<?>) list.get(0);
+        assertEquals("songs", listUpdate.getProperty());
+        assertEquals(List.of("x"), listUpdate.getAdded());
+        assertEquals(List.of(), listUpdate.getRemoved());
+
+        assertEquals(2, listUpdate.getEdits().size());
+        ListEdit<?> insert = listUpdate.getEdits().get(0);
+        assertEquals(ListEdit.Type.INSERT, insert.getType());
+        assertEquals(3, insert.getCurrentIndex());
+        assertEquals(List.of("x"), insert.getItems());
+
+        ListEdit<?> move = listUpdate.getEdits().get(1);
+        assertEquals(ListEdit.Type.MOVE, move.getType());
+        assertEquals(1, move.getPreviousIndex());
+        assertEquals(5, move.getCurrentIndex());
+        assertEquals(List.of("b"), move.getItems());
+    }
+
+    @Test
+    @DisplayName("Test for deleted range in a list without id compared by position")
+    public void diffOrderedListDeletedRange() throws IllegalAccessException {
+
+        Playlist previousPlaylist = new Playlist(1, List.of("a", "b", "c", "d", "e"));
+        Playlist currentPlaylist = new Playlist(1, List.of("a", "e"));
+
+        DiffConfig config = new DiffConfig();
+        config.setOrderedLists(true);
+        List<ChangeType> list = new DiffTool<Playlist>(config).diff(previousPlaylist, currentPlaylist);
+
+        ListUpdate<?> listUpdate = (ListUpdate<?>) list.get(0);
+        assertEquals(List.of("b", "c", "d"), listUpdate.getRemoved());
+        assertEquals(1, listUpdate.getEdits().size());
+        assertEquals(ListEdit.Type.DELETE, listUpdate.getEdits().get(0).getType());
+        assertEquals(1, listUpdate.getEdits().get(0).getPreviousIndex());
+        assertThrows(AuditException.class, () -> new DiffTool<Playlist>().diff(previousPlaylist, currentPlaylist));
+    }
+
     @Test
     @DisplayName("Test for no added or removed items with auditKey")
     public void diffNoAddedRemovedItemsWithAuditKey() throws IllegalAccessException, NoSuchFieldException {
@@ -356,7 +648,7 @@ public class DiffToolTest {
         assertEquals(expected.getRemoved(), ((ListUpdate<?>) list.get(0)).getRemoved());
 
         PropertyUpdate<Subject> expectedProperty = new PropertyUpdate<>();
-        expectedProperty.setProperty("subjects[subjectId].subjectName");
+        expectedProperty.setProperty("subjects[2].subjectName");
         expectedProperty.setCurrent(new Subject(2, "music"));
         expectedProperty.setPrevious(new Subject(2, "chemistry"));
 
@@ -394,7 +686,7 @@ public class DiffToolTest {
         assertEquals(expected.getRemoved(), ((ListUpdate<?>) list.get(1)).getRemoved());
 
         PropertyUpdate<Subject> expectedProperty = new PropertyUpdate<>();
-        expectedProperty.setProperty("subjects[subjectId].subjectName");
+        expectedProperty.setProperty("subjects[2].subjectName");
         expectedProperty.setCurrent(new Subject(2, "music"));
         expectedProperty.setPrevious(new Subject(2, "chemistry"));
 
@@ -403,6 +695,775 @@ public class DiffToolTest {
         assertEquals(expectedProperty.getCurrent(), ((PropertyUpdate<?>) list.get(2)).getCurrent());
     }
 
+    @Test
+    @DisplayName("Test for update on primitive properties with method handle access")
+    public void diffPrimitivePropertyUpdateWithMethodHandles() throws IllegalAccessException {
+
+        Measure previousMeasure = new Measure(1, 10L, Double.NaN, true, "m1");
+        Measure currentMeasure = new Measure(1, 11L, Double.NaN, false, "m1");
+
+        DiffConfig config = new DiffConfig();
+        config.setAccessMode(AccessMode.METHOD_HANDLE);
+        DiffTool<Measure> diffTool = new DiffTool<>(config);
+        List<ChangeType> list = diffTool.diff(previousMeasure, currentMeasure);
+
+        assertEquals(2, list.size());
+        assertEquals("count", list.get(0).getProperty());
+        assertEquals(previousMeasure, ((PropertyUpdate<?>) list.get(0)).getPrevious());
+        assertEquals(currentMeasure, ((PropertyUpdate<?>) list.get(0)).getCurrent());
+        assertEquals("active", list.get(1).getProperty());
+    }
+
+    @Test
+    @DisplayName("Test for same result with reflection and method handle access")
+    public void diffSameResultWithReflectionAndMethodHandles() throws IllegalAccessException {
+
+        Student previousStudent = new Student(1, "student1", List.of(new Subject(1, "maths"), new Subject(2, "chemistry"), new Subject(3, "science")));
+        Student currentStudent = new Student(1,  "student2", List.of(new Subject(1, "maths"), new Subject(2, "music"), new Subject(4, "art")));
+
+        DiffConfig config = new DiffConfig();
+        config.setAccessMode(AccessMode.METHOD_HANDLE);
+        List<ChangeType> expected = new DiffTool<Student>().diff(previousStudent, currentStudent);
+        List<ChangeType> list = new DiffTool<Student>(config).diff(previousStudent, currentStudent);
+
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProperty(), list.get(i).getProperty());
+        }
+    }
+
+    @Test
+    @DisplayName("Test for generated differs being used with the same result as reflection")
+    public void diffGeneratedDifferSameResultAsReflection() throws IllegalAccessException {
+
+        Book previousBook = new Book(1, "book1", new Category(1, "cat1"));
+        Book currentBook = new Book(1, "book2", new Category(1, "cat1-2"));
+
+        assertNotNull(Differs.of(Book.class));
+        assertNotNull(Differs.of(Subject.class));
+        assertNull(Differs.of(Category.class));
+
+        DiffConfig config = new DiffConfig();
+        config.setGeneratedDiffers(false);
+        List<ChangeType> expected = new DiffTool<Book>(config).diff(previousBook, currentBook);
+        List<ChangeType> list = new DiffTool<Book>().diff(previousBook, currentBook);
+
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProperty(), list.get(i).getProperty());
+            assertEquals(((PropertyUpdate<?>) expected.get(i)).getPrevious(), ((PropertyUpdate<?>) list.get(i)).getPrevious());
+            assertEquals(((PropertyUpdate<?>) expected.get(i)).getCurrent(), ((PropertyUpdate<?>) list.get(i)).getCurrent());
+        }
+
+        List<ChangeType> readings = new DiffTool<Reading>().diff(new Reading(1, 1.5, "kg"), new Reading(1, 2.5, "kg"));
+        assertNotNull(Differs.of(Reading.class));
+        assertEquals(1, readings.size());
+        assertEquals("value", readings.get(0).getProperty());
+    }
+
+    @Test
+    @DisplayName("Test for the same instance being skipped")
+    public void diffSameInstanceSkipsTraversal() throws IllegalAccessException {
+
+        Category category = new Category(1, "cat1");
+        List<Account> accounts = List.of(new Account(1, "account1"));
+        Book book = new Book(1, "book1", category);
+
+        assertTrue(new DiffTool<Book>().diff(book, book).isEmpty());
+        assertEquals(1, new DiffTool<Book>().diff(new Book(1, "book1", category), new Book(1, "book2", category)).size());
+
+        List<ChangeType> list = new DiffTool<Client>().diff(new Client(1, "client1", accounts), new Client(1, "client2", accounts));
+        assertEquals(2, list.size());
+        assertEquals("clientName", list.get(0).getProperty());
+        assertTrue(((ListUpdate<?>) list.get(1)).getAdded().isEmpty());
+        assertTrue(((ListUpdate<?>) list.get(1)).getRemoved().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test for branches with the same fingerprint being pruned")
+    public void diffPrunesSameFingerprint() throws IllegalAccessException {
+
+        Member previousMember = new Member(1, new Badge(1, "gold"));
+        Member currentMember = new Member(1, new Badge(1, "silver"));
+
+        List<ChangeType> list = new DiffTool<Member>().diff(previousMember, currentMember);
+        assertEquals(1, list.size());
+        assertEquals("Member.badge.label", list.get(0).getProperty());
+
+        DiffConfig config = new DiffConfig();
+        config.setFingerprints(true);
+        DiffTool<Member> diffTool = new DiffTool<>(config);
+        assertTrue(diffTool.diff(previousMember, currentMember).isEmpty());
+        assertTrue(diffTool.hasChanges(previousMember, new Member(1, new Badge(2, "gold"))));
+    }
+
+    @Test
+    @DisplayName("Test for structural fingerprints")
+    public void fingerprintOfObjectGraph() {
+
+        Client client = new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2")));
+
+        assertEquals(Fingerprints.of(client), Fingerprints.of(new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2")))));
+        assertNotEquals(Fingerprints.of(client), Fingerprints.of(new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account3")))));
+        assertNotEquals(Fingerprints.of(client), Fingerprints.of(new Client(1, "client1", List.of(new Account(2, "account2"), new Account(1, "account1")))));
+        // A nested Fingerprinted object contributes its own fingerprint
+        assertEquals(Fingerprints.of(new Member(1, new Badge(1, "gold"))), Fingerprints.of(new Member(1, new Badge(1, "silver"))));
+    }
+
+    @Test
+    @DisplayName("Test for the diff of an object against its snapshot")
+    public void snapshotDiffAndUpdate() throws IllegalAccessException {
+
+        SnapshotStore<Book> store = new SnapshotStore<>(1024);
+        assertTrue(store.update(1, new Book(1, "book1", new Category(1, "cat1"))).isEmpty());
+
+        List<ChangeType> list = store.update(1, new Book(1, "book1", new Category(1, "cat2")));
+        assertEquals(1, list.size());
+        assertEquals("Book.category.categoryName", list.get(0).getProperty());
+        assertEquals("cat1", ((PropertyUpdate<?>) list.get(0)).getPrevious());
+        assertEquals("cat2", ((PropertyUpdate<?>) list.get(0)).getCurrent());
+
+        assertTrue(store.diff(1, new Book(1, "book1", new Category(1, "cat2"))).isEmpty());
+        list = store.diff(1, new Book(1, "book2", null));
+        assertEquals(2, list.size());
+        assertEquals("bookName", list.get(0).getProperty());
+        assertEquals("category", list.get(1).getProperty());
+        assertEquals(Map.of("categoryId", 1, "categoryName", "cat2"), ((PropertyUpdate<?>) list.get(1)).getPrevious());
+
+        // Snapshots growing past their slot move to a new one
+        for (int i = 0; i < 100; i++) {
+            store.update(i % 10, new Book(i % 10, "book" + "x".repeat(i), new Category(i, "cat" + i)));
+        }
+        assertEquals(10, store.size());
+        assertTrue(store.diff(9, new Book(9, "book" + "x".repeat(99), new Category(99, "cat99"))).isEmpty());
+        assertThrows(AuditException.class, () -> store.diff(42, new Book(42, "book", null)));
+
+        // Without an explicit key the entity is identified by its 'id' or @AuditKey value
+        SnapshotStore<Account> accounts = new SnapshotStore<>();
+        accounts.put(new Account(1, "account1"));
+        assertEquals("accountName", accounts.diff(new Account(1, "account2")).get(0).getProperty());
+
+        // Equal sets and maps iterated in another order have the same snapshot
+        Map<String, Integer> stock = new LinkedHashMap<>();
+        stock.put("a", 1);
+        stock.put("b", 2);
+        Map<String, Integer> reversedStock = new LinkedHashMap<>();
+        reversedStock.put("b", 2);
+        reversedStock.put("a", 1);
+        SnapshotStore<Inventory> inventories = new SnapshotStore<>();
+        inventories.put(1, new Inventory(1, stock, new LinkedHashSet<>(List.of("x", "y", "z")), new long[0], new String[0]));
+        assertTrue(inventories.diff(1, new Inventory(1, reversedStock, new LinkedHashSet<>(List.of("z", "y", "x")), new long[0], new String[0])).isEmpty());
+        assertEquals(List.of("stock"), inventories.diff(1, new Inventory(1, Map.of("a", 1, "b", 3), Set.of("x", "y", "z"), new long[0], new String[0]))
+                .stream().map(ChangeType::getProperty).toList());
+
+        // Values whose string form does not identify them cannot be snapshotted
+        assertThrows(AuditException.class, () -> new SnapshotStore<Attachment>().put(1, new Attachment(1, new Object())));
+
+        // A cyclic graph cannot be snapshotted, a shared object can
+        Person person = new Person(1, "person1");
+        person.partner = new Person(2, "person2");
+        SnapshotStore<Person> persons = new SnapshotStore<>();
+        person.partner.partner = person;
+        assertThrows(AuditException.class, () -> persons.put(1, person));
+        Book book = new Book(1, "book1", new Category(1, "cat1"));
+        SnapshotStore<Pair> pairs = new SnapshotStore<>();
+        pairs.put(1, new Pair(1, new Shelf(1, book), new Shelf(2, book)));
+        assertTrue(pairs.diff(1, new Pair(1, new Shelf(1, book), new Shelf(2, book))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test for snapshots kept in a memory-mapped file")
+    public void snapshotStoreInFile() throws IllegalAccessException, IOException {
+
+        Path file = Files.createTempFile("snapshots", ".bin");
+        try {
+            Inventory inventory = new Inventory(1, Map.of("apple", 3), Set.of("fruit"), new long[]{1, 2, 3}, new String[]{"a"});
+            try (SnapshotStore<Inventory> store = new SnapshotStore<>(file, 4096)) {
+                store.put(inventory.inventoryId(), inventory);
+            }
+            try (SnapshotStore<Inventory> store = new SnapshotStore<>(file, 4096)) {
+                assertTrue(store.contains(1));
+                assertTrue(store.diff(1, inventory).isEmpty());
+
+                List<ChangeType> list = store.update(1, new Inventory(1, Map.of("apple", 4), Set.of("fruit"), new long[]{1, 2, 4}, new String[]{"a"}));
+                assertEquals(2, list.size());
+                assertEquals("stock", list.get(0).getProperty());
+                assertEquals(Map.of("apple", 3), ((PropertyUpdate<?>) list.get(0)).getPrevious());
+                assertEquals("readings", list.get(1).getProperty());
+                assertArrayEquals(new long[]{1, 2, 3}, (long[]) ((PropertyUpdate<?>) list.get(1)).getPrevious());
+            }
+
+            // Keys read back as another object (a UUID is decoded as its string) still find their snapshot
+            UUID key = UUID.randomUUID();
+            try (SnapshotStore<Inventory> store = new SnapshotStore<>(file, 4096)) {
+                store.put(key, inventory);
+                assertFalse(store.contains(UUID.randomUUID()));
+            }
+            try (SnapshotStore<Inventory> store = new SnapshotStore<>(file, 4096)) {
+                assertEquals(2, store.size());
+                assertTrue(store.contains(key));
+                assertTrue(store.diff(key, inventory).isEmpty());
+                assertTrue(store.update(key, inventory).isEmpty());
+                assertEquals(2, store.size());
+                assertFalse(store.contains(key.toString()));
+                assertTrue(store.remove(key));
+                assertFalse(store.contains(key));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("Test for changes appended to the audit log and found by property and entity")
+    public void auditLogAppendAndFind() throws IllegalAccessException, IOException {
+
+        Path directory = Files.createTempDirectory("audit");
+        try {
+            DiffTool<Book> diffTool = new DiffTool<>();
+            try (AuditLog log = new AuditLog(directory, 4096)) {
+                for (int i = 0; i < 200; i++) {
+                    int bookId = i % 50;
+                    Book previousBook = new Book(bookId, "book" + bookId, new Category(1, "cat" + i));
+                    Book currentBook = new Book(bookId, "book" + bookId, new Category(1, "cat" + (i + 1)));
+                    log.append(bookId, diffTool.diff(previousBook, currentBook));
+                }
+                diffTool.diff(new Book(42, "book42", null), new Book(42, "book42-2", null), log.listener(42));
+            }
+
+            try (AuditLog log = new AuditLog(directory, 4096)) {
+                List<AuditRecord> records = log.find("Book.category.categoryName", 42);
+                assertEquals(4, records.size());
+                // The objects owning the property are read back as maps of their fields
+                assertEquals(Map.of("categoryId", 1, "categoryName", "cat42"), ((PropertyUpdate<?>) records.get(0).change()).getPrevious());
+                assertEquals(Map.of("categoryId", 1, "categoryName", "cat193"), ((PropertyUpdate<?>) records.get(3).change()).getCurrent());
+                assertTrue(records.get(0).sequence() < records.get(3).sequence());
+
+                assertEquals(200, log.findByProperty("Book.category.categoryName").size());
+                List<AuditRecord> entity = log.findByEntity(42);
+                assertEquals(5, entity.size());
+                assertEquals("bookName", entity.get(4).change().getProperty());
+                assertEquals(200, entity.get(4).sequence());
+                assertTrue(log.find("Book.category.categoryName", 51).isEmpty());
+            }
+
+            // Keys that are not read back as equal objects are matched on their encoded form
+            UUID key = UUID.randomUUID();
+            try (AuditLog log = new AuditLog(directory, 4096)) {
+                log.append(key, diffTool.diff(new Book(1, "book1", null), new Book(1, "book2", null)));
+            }
+            try (AuditLog log = new AuditLog(directory, 4096)) {
+                List<AuditRecord> records = log.findByEntity(key);
+                assertEquals(1, records.size());
+                assertEquals("bookName", records.get(0).change().getProperty());
+                assertEquals(1, log.find("bookName", key).size());
+                assertTrue(log.findByEntity(UUID.randomUUID()).isEmpty());
+
+                // A query does not add the type of its key to the type table
+                List<String> types = Files.readAllLines(directory.resolve("types"));
+                assertTrue(log.findByEntity(LocalDate.of(2024, 1, 1)).isEmpty());
+                assertEquals(types, Files.readAllLines(directory.resolve("types")));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test for the statistics reported to the metrics")
+    public void diffReportsMetrics() throws IllegalAccessException {
+
+        List<DiffStats> stats = new ArrayList<>();
+        DiffConfig config = new DiffConfig();
+        config.setMetrics(stats::add);
+        DiffTool<Client> diffTool = new DiffTool<>(config);
+
+        Client previousClient = new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2")));
+        Client currentClient = new Client(1, "client2", List.of(new Account(1, "account1"), new Account(2, "account3"), new Account(3, "account4")));
+        List<ChangeType> list = diffTool.diff(previousClient, currentClient);
+
+        assertEquals(1, stats.size());
+        DiffStats diffStats = stats.get(0);
+        assertEquals("Client", diffStats.getRootType());
+        assertEquals(list.size(), diffStats.getChanges());
+        assertEquals(1, diffStats.getMaxDepth());
+        assertEquals(1, diffStats.getListsCompared());
+        assertEquals(5, diffStats.getListItemsCompared());
+        assertEquals(3, diffStats.getLargestList());
+        // 3 fields of the client and 2 of the modified account
+        assertEquals(5, diffStats.getFieldsVisited());
+        assertTrue(diffStats.getDurationNanos() >= diffStats.getListNanos());
+
+        assertTrue(diffTool.hasChanges(previousClient, currentClient));
+        assertEquals(1, stats.get(1).getChanges());
+
+        new DiffTool<Book>(config).diff(new Book(1, "book1", new Category(1, "cat1")), new Book(1, "book1", new Category(1, "cat2")));
+        assertEquals(2, stats.get(2).getMaxDepth());
+    }
+
+    @Test
+    @DisplayName("Test for the flight recorder events of a diff")
+    public void diffEmitsFlightRecorderEvents() throws IllegalAccessException, IOException {
+
+        Path file = Files.createTempFile("diff", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.difference.Diff");
+            recording.enable("com.difference.ListJoin");
+            recording.start();
+            new DiffTool<Client>().diff(new Client(1, "client1", List.of(new Account(1, "account1"))),
+                    new Client(1, "client1", List.of(new Account(2, "account2"))));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            RecordedEvent diff = events.stream().filter(e -> e.getEventType().getName().equals("com.difference.Diff")).findFirst().orElseThrow();
+            assertEquals("Client", diff.getString("rootType"));
+            assertEquals(1, diff.getInt("changes"));
+            RecordedEvent join = events.stream().filter(e -> e.getEventType().getName().equals("com.difference.ListJoin")).findFirst().orElseThrow();
+            assertEquals("accounts", join.getString("property"));
+            assertEquals(1, join.getInt("added"));
+            assertEquals(1, join.getInt("removed"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @DisplayName("Test for cyclic graphs and shared objects reported at each path")
+    public void diffCyclicGraph() throws IllegalAccessException {
+
+        Person previousPerson = new Person(1, "person1");
+        previousPerson.partner = new Person(2, "person2");
+        previousPerson.partner.partner = previousPerson;
+        Person currentPerson = new Person(1, "person1");
+        currentPerson.partner = new Person(2, "person2-2");
+        currentPerson.partner.partner = currentPerson;
+
+        List<ChangeType> list = new DiffTool<Person>().diff(previousPerson, currentPerson);
+        assertEquals(1, list.size());
+        assertEquals("Person.partner.name", list.get(0).getProperty());
+        assertTrue(new DiffTool<Person>().hasChanges(previousPerson, currentPerson));
+
+        // The changes of a shared object are reported at every path it is reached from
+        Category previousCategory = new Category(1, "cat1");
+        Category currentCategory = new Category(1, "cat2");
+        list = new DiffTool<Pair>().diff(new Pair(1, new Shelf(1, new Book(1, "book1", previousCategory)), new Shelf(2, new Book(2, "book2", previousCategory))),
+                new Pair(1, new Shelf(1, new Book(1, "book1", currentCategory)), new Shelf(2, new Book(2, "book2", currentCategory))));
+        assertEquals(2, list.size());
+        assertEquals("Pair.left.book.category.categoryName", list.get(0).getProperty());
+        assertEquals("Pair.right.book.category.categoryName", list.get(1).getProperty());
+
+        // A shared object holding nested changes replays them below each path, whatever the path the filter keeps
+        Book previousBook = new Book(1, "book1", previousCategory);
+        Book currentBook = new Book(1, "book1-2", currentCategory);
+        Pair previousPair = new Pair(1, new Shelf(1, previousBook), new Shelf(2, previousBook));
+        Pair currentPair = new Pair(1, new Shelf(1, currentBook), new Shelf(2, currentBook));
+        list = new DiffTool<Pair>().diff(previousPair, currentPair);
+        assertEquals(List.of("Pair.left.book.bookName", "Pair.left.book.category.categoryName",
+                "Pair.right.book.bookName", "Pair.right.book.category.categoryName"), list.stream().map(ChangeType::getProperty).toList());
+        assertSame(currentCategory, ((PropertyUpdate<?>) list.get(3)).getCurrent());
+        DiffConfig config = new DiffConfig();
+        config.setPaths(List.of("Pair.right.book"));
+        list = new DiffTool<Pair>(config).diff(previousPair, currentPair);
+        assertEquals(List.of("Pair.right.book.bookName", "Pair.right.book.category.categoryName"), list.stream().map(ChangeType::getProperty).toList());
+
+        // A shared object inside a cycle is still cut where the cycle closes
+        Person previousFriend = new Person(3, "person3");
+        Person currentFriend = new Person(3, "person3-2");
+        previousPerson.partner.partner = previousFriend;
+        currentPerson.partner.partner = currentFriend;
+        previousFriend.partner = previousPerson;
+        currentFriend.partner = currentPerson;
+        list = new DiffTool<Person>().diff(previousPerson, currentPerson);
+        assertEquals(List.of("Person.partner.name", "Person.partner.partner.name"), list.stream().map(ChangeType::getProperty).toList());
+    }
+
+    @Test
+    @DisplayName("Test for a deeply nested graph not using the thread stack")
+    public void diffDeepGraph() throws IllegalAccessException {
+
+        Link previousLink = null;
+        Link currentLink = null;
+        for (int i = 0; i < 100_000; i++) {
+            previousLink = new Link(i, i == 0 ? "last" : "link", previousLink);
+            currentLink = new Link(i, i == 0 ? "last-2" : "link", currentLink);
+        }
+
+        List<ChangeType> list = new DiffTool<Link>().diff(previousLink, currentLink);
+        assertEquals(1, list.size());
+        assertTrue(list.get(0).getProperty().startsWith("Link.next.next."));
+        assertTrue(list.get(0).getProperty().endsWith(".next.name"));
+    }
+
+    @Test
+    @DisplayName("Test for properties ignored by path rules and @AuditIgnore")
+    public void diffPathRulesAndAuditIgnore() throws IllegalAccessException {
+
+        Profile previousProfile = new Profile(1, "profile1", "cache1", new Category(1, "cat1"), List.of(new Account(1, "acc1")));
+        Profile currentProfile = new Profile(1, "profile2", "cache2", new Category(2, "cat2"), List.of(new Account(1, "acc2")));
+
+        // The @AuditIgnore field is never compared
+        List<ChangeType> list = new DiffTool<Profile>().diff(previousProfile, currentProfile);
+        assertEquals(List.of("name", "Profile.category.categoryId", "Profile.category.categoryName", "accounts", "accounts[1].accountName"),
+                list.stream().map(ChangeType::getProperty).toList());
+
+        DiffConfig config = new DiffConfig();
+        config.setPaths(List.of("Profile.category.*", "Profile.accounts", "!*.categoryId"));
+        list = new DiffTool<Profile>(config).diff(previousProfile, currentProfile);
+        assertEquals(List.of("Profile.category.categoryName", "accounts", "accounts[1].accountName"),
+                list.stream().map(ChangeType::getProperty).toList());
+
+        config = new DiffConfig();
+        config.setMaxDepth(1);
+        list = new DiffTool<Profile>(config).diff(previousProfile, currentProfile);
+        assertEquals(List.of("name", "accounts"), list.stream().map(ChangeType::getProperty).toList());
+
+        config = new DiffConfig();
+        config.setPaths(List.of("!Profile.name", "!Profile.category", "!*.accountName"));
+        assertFalse(new DiffTool<Profile>(config).hasChanges(previousProfile, currentProfile));
+    }
+
+    @Test
+    @DisplayName("Test for a patch built from the changes and applied to the previous state")
+    public void patchAndApply() throws IllegalAccessException, IOException, ClassNotFoundException {
+
+        // Records are copied, the nested category is rebuilt and a null property gets its new value
+        DiffTool<Book> bookTool = new DiffTool<>();
+        Book previousBook = new Book(1, "book1", new Category(1, "cat1"));
+        Book currentBook = new Book(1, "book2", new Category(1, "cat2"));
+        assertEquals(currentBook, bookTool.apply(bookTool.patch(previousBook, currentBook), previousBook));
+        assertEquals(currentBook, bookTool.apply(bookTool.patch(new Book(1, "book2", null), currentBook), new Book(1, "book2", null)));
+
+        // Keyed list items are removed, added and modified by their key
+        DiffTool<Library> libraryTool = new DiffTool<>();
+        Library previousLibrary = new Library(1, List.of(new Account(1, "account1"), new Account(2, "account2")), "library1",
+                List.of(new Subject(1, "subject1")));
+        Library currentLibrary = new Library(1, List.of(new Account(2, "account22"), new Account(3, "account3")), "library1",
+                List.of(new Subject(1, "subject11"), new Subject(2, "subject2")));
+        Patch patch = libraryTool.patch(previousLibrary, currentLibrary);
+        assertEquals(List.of(Patch.Kind.REMOVE, Patch.Kind.ADD, Patch.Kind.ITEM, Patch.Kind.ADD, Patch.Kind.ITEM),
+                patch.getOperations().stream().map(Patch.Operation::kind).toList());
+        assertEquals(currentLibrary, libraryTool.apply(patch, previousLibrary));
+
+        // Maps, sets and arrays
+        DiffTool<Inventory> inventoryTool = new DiffTool<>();
+        Inventory previousInventory = new Inventory(1, Map.of("pen", 10, "ink", 3, "cap", 1), Set.of("office", "school"),
+                new long[]{1, 2, 3, 4, 5, 6}, new String[]{"a", "b"});
+        Inventory currentInventory = new Inventory(1, Map.of("pen", 12, "ink", 3, "pad", 7), Set.of("office", "home"),
+                new long[]{1, 2, 9, 5, 6}, new String[]{"a", "b", "c"});
+        Inventory patched = inventoryTool.apply(inventoryTool.patch(previousInventory, currentInventory), previousInventory);
+        assertFalse(inventoryTool.hasChanges(patched, currentInventory));
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6}, previousInventory.readings());
+
+        // Lists compared by position, through a serialized patch
+        DiffConfig config = new DiffConfig();
+        config.setOrderedLists(true);
+        DiffTool<Playlist> playlistTool = new DiffTool<>(config);
+        Playlist previousPlaylist = new Playlist(1, List.of("a", "b", "c", "d", "e"));
+        Playlist currentPlaylist = new Playlist(1, List.of("a", "c", "d", "x", "e", "b"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(playlistTool.patch(previousPlaylist, currentPlaylist));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(currentPlaylist, playlistTool.apply((Patch) in.readObject(), previousPlaylist));
+        }
+
+        // Mutable objects are updated in place
+        Person previousPerson = new Person(1, "person1");
+        Person currentPerson = new Person(1, "person2");
+        DiffTool<Person> personTool = new DiffTool<>();
+        assertSame(previousPerson, personTool.apply(personTool.patch(previousPerson, currentPerson), previousPerson));
+        assertEquals("person2", previousPerson.name);
+    }
+
+    @Test
+    @DisplayName("Test for records read through their accessors and JDK values compared by equals")
+    public void diffRecordsThroughAccessorsAndJdkValues() throws IllegalAccessException {
+
+        // Types of the JDK are compared with equals, their encapsulated fields are never opened
+        Event previousEvent = new Event(1, LocalDate.of(2024, 1, 1), Status.ACTIVE, new BigDecimal("1.0"), Optional.of("note"));
+        Event currentEvent = new Event(1, LocalDate.of(2024, 1, 2), Status.CLOSED, new BigDecimal("1.0"), Optional.of("note"));
+        List<ChangeType> list = new DiffTool<Event>().diff(previousEvent, currentEvent);
+        assertEquals(List.of("date", "status"), list.stream().map(ChangeType::getProperty).toList());
+
+        // Record components are read through their accessors, in both access modes
+        DiffConfig config = new DiffConfig();
+        config.setAccessMode(AccessMode.METHOD_HANDLE);
+        for (DiffTool<Label> diffTool : List.of(new DiffTool<Label>(), new DiffTool<Label>(config))) {
+            assertFalse(diffTool.hasChanges(new Label(1, "label"), new Label(1, " label ")));
+            assertEquals(List.of("text"), diffTool.diff(new Label(1, "label"), new Label(1, "label2")).stream().map(ChangeType::getProperty).toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Test for compact changes of lists, sets and maps")
+    public void diffCompactChanges() throws IllegalAccessException {
+
+        DiffConfig config = new DiffConfig();
+        config.setCompactChanges(true);
+
+        // Property updates hold the values of the property, not the objects owning it
+        List<ChangeType> list = new DiffTool<Book>(config).diff(new Book(1, "book1", new Category(1, "cat1")), new Book(1, "book2", new Category(1, "cat2")));
+        assertEquals("book1", ((PropertyUpdate<?>) list.get(0)).getPrevious());
+        assertEquals("book2", ((PropertyUpdate<?>) list.get(0)).getCurrent());
+        assertEquals("Book.category.categoryName", list.get(1).getProperty());
+        assertEquals("cat1", ((PropertyUpdate<?>) list.get(1)).getPrevious());
+        assertEquals("cat2", ((PropertyUpdate<?>) list.get(1)).getCurrent());
+
+        // List updates hold the keys of the items, modified items the values of their field
+        list = new DiffTool<Client>(config).diff(new Client(1, "client1", List.of(new Account(1, "account1"), new Account(2, "account2"))),
+                new Client(1, "client1", List.of(new Account(2, "account22"), new Account(3, "account3"))));
+        ListUpdate<?> listUpdate = (ListUpdate<?>) list.get(0);
+        assertEquals(List.of(3), listUpdate.getAdded());
+        assertEquals(List.of(1), listUpdate.getRemoved());
+        assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) listUpdate.getAdded()).add(4));
+        assertEquals("accounts[2].accountName", list.get(1).getProperty());
+        assertEquals("account2", ((PropertyUpdate<?>) list.get(1)).getPrevious());
+        assertEquals("account22", ((PropertyUpdate<?>) list.get(1)).getCurrent());
+
+        // Array updates hold the differing ranges
+        list = new DiffTool<Inventory>(config).diff(new Inventory(1, Map.of(), Set.of(), new long[]{1, 2, 3, 4}, new String[0]),
+                new Inventory(1, Map.of(), Set.of(), new long[]{1, 9, 9, 9, 4}, new String[0]));
+        assertArrayEquals(new long[]{2, 3}, (long[]) ((ArrayUpdate) list.get(0)).getPrevious());
+        assertArrayEquals(new long[]{9, 9, 9}, (long[]) ((ArrayUpdate) list.get(0)).getCurrent());
+
+        // Map updates hold the keys of the added and removed values, modified entries hold both values
+        list = new DiffTool<Catalog>(config).diff(new Catalog(1, Map.of("a", new Account(1, "account1"), "b", new Account(2, "account2"))),
+                new Catalog(1, Map.of("a", new Account(1, "account11"), "c", new Account(3, "account3"))));
+        MapUpdate<?, ?> mapUpdate = (MapUpdate<?, ?>) list.get(0);
+        assertEquals(Map.of("c", 3), mapUpdate.getAdded());
+        assertEquals(Map.of("b", 2), mapUpdate.getRemoved());
+        assertEquals("accounts[a]", list.get(1).getProperty());
+        assertEquals(new Account(1, "account1"), ((PropertyUpdate<?>) list.get(1)).getPrevious());
+        assertEquals(new Account(1, "account11"), ((PropertyUpdate<?>) list.get(1)).getCurrent());
+
+        assertThrows(AuditException.class, () -> new DiffTool<Book>(config).patch(new Book(1, "book1", null), new Book(1, "book2", null)));
+    }
+
+    @Test
+    @DisplayName("Test for lists joined on integral keys")
+    public void diffListsJoinedOnIntegralKeys() throws IllegalAccessException {
+
+        // Primitive keys are joined without boxing; a duplicated key keeps its last item
+        List<ChangeType> list = new DiffTool<Sensor>().diff(
+                new Sensor(1, List.of(new Sample(1L, 1.0), new Sample(2L, 2.0), new Sample(2L, 2.5), new Sample(Long.MIN_VALUE, 3.0))),
+                new Sensor(1, List.of(new Sample(2L, 2.5), new Sample(Long.MIN_VALUE, 4.0), new Sample(5L, 5.0))));
+        ListUpdate<?> listUpdate = (ListUpdate<?>) list.get(0);
+        assertEquals(List.of(new Sample(5L, 5.0)), listUpdate.getAdded());
+        assertEquals(List.of(new Sample(1L, 1.0)), listUpdate.getRemoved());
+        assertEquals(2, list.size());
+        assertEquals("samples[" + Long.MIN_VALUE + "].value", list.get(1).getProperty());
+
+        // A null boxed key falls back to the join on the boxed keys
+        list = new DiffTool<Student>().diff(new Student(1, "student1", List.of(new Subject(1, "math"), new Subject(null, "art"))),
+                new Student(1, "student1", List.of(new Subject(null, "art"), new Subject(2, "music"), new Subject(1, "maths"))));
+        listUpdate = (ListUpdate<?>) list.get(0);
+        assertEquals(List.of(new Subject(2, "music")), listUpdate.getAdded());
+        assertEquals(List.of(), listUpdate.getRemoved());
+        assertEquals("subjects[1].subjectName", list.get(1).getProperty());
+    }
+
+    @Test
+    @DisplayName("Test for large lists joined on keys spilled to disk")
+    public void diffListsJoinedOnDisk() throws IllegalAccessException, IOException {
+
+        List<Sample> previousSamples = new ArrayList<>();
+        List<Sample> currentSamples = new ArrayList<>();
+        List<Subject> previousSubjects = new ArrayList<>();
+        List<Subject> currentSubjects = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            previousSamples.add(new Sample((i * 7919L) % 4000, i));
+            currentSamples.add(new Sample((i * 7919L + 13) % 4000, i % 3 == 0 ? i + 1 : i));
+            previousSubjects.add(new Subject(i % 2500, "subject" + i));
+            currentSubjects.add(new Subject(i % 5 == 0 ? null : (i * 31) % 3500, "subject" + (i % 4 == 0 ? i + 1 : i)));
+        }
+
+        Path directory = Files.createTempDirectory("spill");
+        DiffConfig config = new DiffConfig();
+        config.setSpillThreshold(16);
+        config.setSpillDirectory(directory);
+
+        // Same changes as the join in memory, in key order and with the added and removed items in several listUpdates
+        assertSameChanges(new DiffTool<Sensor>().diff(new Sensor(1, previousSamples), new Sensor(1, currentSamples)),
+                new DiffTool<Sensor>(config).diff(new Sensor(1, previousSamples), new Sensor(1, currentSamples)));
+        assertSameChanges(new DiffTool<Student>().diff(new Student(1, "student1", previousSubjects), new Student(1, "student1", currentSubjects)),
+                new DiffTool<Student>(config).diff(new Student(1, "student1", previousSubjects), new Student(1, "student1", currentSubjects)));
+        assertTrue(new DiffTool<Sensor>(config).diff(new Sensor(1, currentSamples), new Sensor(1, currentSamples)).stream()
+                .allMatch(change -> change instanceof ListUpdate<?> listUpdate && listUpdate.getAdded().isEmpty() && listUpdate.getRemoved().isEmpty()));
+        assertTrue(new DiffTool<Sensor>(config).hasChanges(new Sensor(1, previousSamples), new Sensor(1, currentSamples)));
+        assertFalse(new DiffTool<Sensor>(config).hasChanges(new Sensor(1, currentSamples), new Sensor(1, new ArrayList<>(currentSamples))));
+
+        // The temporary files are deleted once the lists are joined
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(directory);
+    }
+
+    private static void assertSameChanges(List<ChangeType> expected, List<ChangeType> actual) {
+        List<Object> expectedAdded = new ArrayList<>();
+        List<Object> expectedRemoved = new ArrayList<>();
+        List<Object> actualAdded = new ArrayList<>();
+        List<Object> actualRemoved = new ArrayList<>();
+        List<String> expectedProperties = new ArrayList<>();
+        List<String> actualProperties = new ArrayList<>();
+        int listUpdates = 0;
+        for (ChangeType change : expected) {
+            if (change instanceof ListUpdate<?> listUpdate) {
+                expectedAdded.addAll(listUpdate.getAdded());
+                expectedRemoved.addAll(listUpdate.getRemoved());
+            } else {
+                expectedProperties.add(change.getProperty());
+            }
+        }
+        for (ChangeType change : actual) {
+            if (change instanceof ListUpdate<?> listUpdate) {
+                actualAdded.addAll(listUpdate.getAdded());
+                actualRemoved.addAll(listUpdate.getRemoved());
+                listUpdates++;
+            } else {
+                actualProperties.add(change.getProperty());
+            }
+        }
+        assertFalse(expectedAdded.isEmpty() || expectedRemoved.isEmpty() || expectedProperties.isEmpty());
+        assertEquals(Set.copyOf(expectedAdded), Set.copyOf(actualAdded));
+        assertEquals(expectedAdded.size(), actualAdded.size());
+        assertEquals(Set.copyOf(expectedRemoved), Set.copyOf(actualRemoved));
+        assertEquals(expectedRemoved.size(), actualRemoved.size());
+        assertEquals(expectedProperties.stream().sorted().toList(), actualProperties.stream().sorted().toList());
+        assertTrue(listUpdates >= 1);
+    }
+
+    @Test
+    @DisplayName("Test for the three-way merge of two versions of a base")
+    public void mergeThreeVersions() throws IllegalAccessException {
+
+        Profile base = new Profile(1, "name", null, new Category(1, "category"),
+                List.of(new Account(1, "account1"), new Account(2, "account2"), new Account(3, "account3"), new Account(4, "account4")));
+        Profile left = new Profile(1, "left", null, new Category(1, "leftCategory"),
+                List.of(new Account(1, "account11"), new Account(2, "account2"), new Account(3, "leftAccount"), new Account(5, "account5")));
+        Profile right = new Profile(1, "name", null, new Category(2, "rightCategory"),
+                List.of(new Account(1, "account1"), new Account(2, "account22"), new Account(3, "rightAccount"), new Account(4, "account4"), new Account(6, "account6")));
+
+        DiffTool<Profile> diffTool = new DiffTool<>();
+        MergeResult result = diffTool.merge(base, left, right);
+
+        // Same property or same item changed differently on both sides
+        assertTrue(result.hasConflicts());
+        assertEquals(List.of("Profile.category.categoryName", "accounts[3]"),
+                result.getConflicts().stream().map(MergeResult.Conflict::getProperty).sorted().toList());
+        MergeResult.Conflict conflict = result.getConflicts().stream().filter(c -> c.getProperty().equals("accounts[3]")).findFirst().orElseThrow();
+        assertEquals(new Account(3, "account3"), conflict.base());
+        assertEquals(new Account(3, "leftAccount"), conflict.left());
+        assertEquals(new Account(3, "rightAccount"), conflict.right());
+
+        // Changes of one side only, applied to the base, merge both sides
+        assertEquals(List.of("Profile.category.categoryId", "accounts", "accounts[1].accountName", "accounts[2].accountName", "name"),
+                result.getChanges().stream().map(ChangeType::getProperty).sorted().toList());
+        ListUpdate<?> listUpdate = (ListUpdate<?>) result.getChanges().stream().filter(change -> change instanceof ListUpdate<?>).findFirst().orElseThrow();
+        assertEquals(List.of(new Account(4, "account4")), listUpdate.getRemoved());
+        assertEquals(List.of(new Account(5, "account5"), new Account(6, "account6")), listUpdate.getAdded());
+        Profile merged = diffTool.apply(diffTool.patch(result.getChanges()), base);
+        assertEquals(new Profile(1, "left", null, new Category(2, "category"),
+                List.of(new Account(1, "account11"), new Account(2, "account22"), new Account(3, "account3"), new Account(5, "account5"), new Account(6, "account6"))), merged);
+
+        // The same change on both sides is merged once
+        result = diffTool.merge(base, left, left);
+        assertFalse(result.hasConflicts());
+        assertEquals(diffTool.diff(base, left).stream().map(ChangeType::getProperty).toList(),
+                result.getChanges().stream().map(ChangeType::getProperty).toList());
+    }
+
+    @Test
+    @DisplayName("Test for objects with the same @AuditVersion being skipped")
+    public void diffSkipsSameVersions() throws IllegalAccessException {
+
+        Order previous = new Order(1, 1L, "open", new Customer(1, 4, "customer1"),
+                List.of(new Line(1, 7, "product1"), new Line(2, 3, "product2"), new Line(3, null, "product3")));
+        // Same versions with different fields: the objects are taken as unchanged and their fields are not compared
+        Order current = new Order(1, 2L, "closed", new Customer(1, 4, "renamed"),
+                List.of(new Line(1, 7, "renamed1"), new Line(2, 4, "product22"), new Line(3, null, "product33")));
+
+        List<ChangeType> list = new DiffTool<Order>().diff(previous, current);
+        assertEquals(List.of("version", "status", "lines", "lines[2].revision", "lines[2].product", "lines[3].product"),
+                list.stream().map(ChangeType::getProperty).toList());
+        DiffConfig config = new DiffConfig();
+        config.setAccessMode(AccessMode.METHOD_HANDLE);
+        config.setGeneratedDiffers(false);
+        assertTrue(new DiffTool<Order>(config).diff(previous, current).stream()
+                .noneMatch(change -> change.getProperty().startsWith("Order.customer") || change.getProperty().startsWith("lines[1]")));
+        assertFalse(new DiffTool<Order>().hasChanges(previous, new Order(1, 1L, "closed", null, List.of())));
+
+        // Both sides of a merge may be written with the same version, they are still compared
+        MergeResult result = new DiffTool<Order>().merge(previous, new Order(1, 2L, "closed", previous.customer(), previous.lines()),
+                new Order(1, 2L, "cancelled", previous.customer(), previous.lines()));
+        assertEquals(List.of("status"), result.getConflicts().stream().map(MergeResult.Conflict::getProperty).toList());
+    }
+
+    @Test
+    @DisplayName("Test for the audit pipeline batches and backpressure")
+    public void auditPipelineBatchesAndBackpressure() throws InterruptedException {
+
+        // Every pair with changes reaches the sink once, in batches of at most batchSize entries
+        Queue<List<AuditEntry>> batches = new ConcurrentLinkedQueue<>();
+        PipelineConfig config = new PipelineConfig();
+        config.setWorkers(3);
+        config.setCapacity(64);
+        config.setBatchSize(16);
+        try (AuditPipeline<Book> pipeline = new AuditPipeline<>(new DiffTool<>(), batches::add, config)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(pipeline.submit(i, new Book(i, "book", null), new Book(i, i % 2 == 0 ? "book" : "book" + i, null)));
+            }
+        }
+        assertTrue(batches.stream().allMatch(batch -> !batch.isEmpty() && batch.size() <= 16));
+        List<AuditEntry> entries = batches.stream().flatMap(List::stream).toList();
+        assertEquals(500, entries.size());
+        assertEquals(500, entries.stream().map(AuditEntry::entityKey).distinct().count());
+        assertTrue(entries.stream().allMatch(entry -> entry.changes().size() == 1 && (Integer) entry.entityKey() % 2 == 1));
+
+        // A full queue drops the pair or has the caller diff it
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        // The workers are held in the sink until the queues are full
+        AuditSink blocked = batch -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                if (Thread.currentThread().getName().startsWith("audit-pipeline")) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        config.setWorkers(1);
+        config.setCapacity(2);
+        config.setBatchSize(1);
+        config.setBackpressure(Backpressure.DROP);
+        AuditPipeline<Book> dropping = new AuditPipeline<>(new DiffTool<>(), blocked, config);
+        config.setBackpressure(Backpressure.CALLER_RUNS);
+        AuditPipeline<Book> callerRuns = new AuditPipeline<>(new DiffTool<>(), blocked, config);
+        boolean dropped = false;
+        for (int i = 0; i < 100 && !dropped; i++) {
+            dropped = !dropping.submit(i, new Book(i, "book1", null), new Book(i, "book2", null));
+        }
+        assertTrue(dropped);
+        assertTrue(dropping.getDropped() > 0);
+        for (int i = 0; i < 100 && !threads.contains(Thread.currentThread().getName()); i++) {
+            assertTrue(callerRuns.submit(i, new Book(i, "book1", null), new Book(i, "book2", null)));
+        }
+        assertTrue(threads.contains(Thread.currentThread().getName()));
+        release.countDown();
+        dropping.close();
+        callerRuns.close();
+        assertEquals(0, dropping.getFailed());
+        assertEquals(0, callerRuns.getPending());
+        assertThrows(AuditException.class, () -> callerRuns.submit(1, new Book(1, "book1", null), new Book(1, "book2", null)));
+    }
+
+    @Audited
     public record Book(Integer bookId, String bookName, Category category) {
     }
 
@@ -427,4 +1488,97 @@ public class DiffToolTest {
     public record Subject(@AuditKey Integer subjectId, String subjectName) {
     }
 
+    @Audited
+    public record Reading(int readingId, double value, String unit) {
+    }
+
+    public record Inventory(Integer inventoryId, Map<String, Integer> stock, Set<String> tags, long[] readings, String[] labels) {
+    }
+
+    public record Shelf(Integer shelfId, Book book) {
+    }
+
+    public record Library(Integer libraryId, List<Account> accounts, String name, List<Subject> subjects) {
+    }
+
+    public record Playlist(Integer playlistId, List<String> songs) {
+    }
+
+    public record Measure(int measureId, long count, double value, boolean active, String unit) {
+    }
+
+    public record Member(Integer memberId, Badge badge) {
+    }
+
+    /**
+     * Fingerprint limited to the id, so a change of the label alone is pruned when fingerprints are enabled
+     */
+    public record Badge(Integer badgeId, String label) implements Fingerprinted {
+        @Override
+        public long auditFingerprint() {
+            return badgeId;
+        }
+    }
+
+    public record Pair(Integer pairId, Shelf left, Shelf right) {
+    }
+
+    public record Link(Integer linkId, String name, Link next) {
+    }
+
+    public static class Person {
+        Integer personId;
+        String name;
+        Person partner;
+
+        Person(Integer personId, String name) {
+            this.personId = personId;
+            this.name = name;
+        }
+    }
+
+    @Audited
+    public record Profile(Integer profileId, String name, @AuditIgnore String internalCache, Category category, List<Account> accounts) {
+    }
+
+    public enum Status {
+        ACTIVE,
+        CLOSED
+    }
+
+    public record Event(Integer eventId, LocalDate date, Status status, BigDecimal amount, Optional<String> note) {
+    }
+
+    /**
+     * Record whose accessor normalizes its component
+     */
+    public record Label(Integer labelId, String text) {
+        @Override
+        public String text() {
+            return text.trim();
+        }
+    }
+
+    @Audited
+    public record Sensor(Integer sensorId, List<Sample> samples) {
+    }
+
+    public record Sample(@AuditKey long sampleId, double value) {
+    }
+
+    @Audited
+    public record Order(Integer orderId, @AuditVersion long version, String status, Customer customer, List<Line> lines) {
+    }
+
+    public record Customer(Integer customerId, @AuditVersion int revision, String name) {
+    }
+
+    public record Line(Integer id, @AuditVersion Integer revision, String product) {
+    }
+
+    public record Catalog(Integer catalogId, Map<String, Account> accounts) {
+    }
+
+    public record Attachment(Integer attachmentId, Object content) {
+    }
 }